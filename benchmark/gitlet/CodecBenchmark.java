@@ -0,0 +1,57 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/** Compares how fast commits and staging maps decode from Java
+ *  serialization and from the Codec format.
+ *  Usage: java gitlet.CodecBenchmark [FILES [ROUNDS]], where FILES is the
+ *  number of files in the sample staging map (default 1000) and ROUNDS
+ *  is the number of decodes timed per case (default 2000).
+ *  @author Jinho Shin
+ */
+public class CodecBenchmark {
+
+    /** Run the benchmark as described in the class comment.
+     *  @param args are FILES and ROUNDS. */
+    public static void main(String... args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        GitMap blobs = new GitMap();
+        for (int i = 0; i < files; i += 1) {
+            blobs.put("file" + i + ".txt", Utils.sha1("contents" + i));
+        }
+        Commit com = new Commit("benchmark commit", Utils.sha1("tree"),
+                Utils.sha1("parent"), null, new Date());
+        System.out.printf("%-8s %-12s %10s %12s %10s%n",
+                "object", "format", "bytes", "decodes/s", "MB/s");
+        report("Commit", "serialized", Utils.serialize(com), Commit.class,
+                rounds);
+        report("Commit", "codec", Codec.encode(com), Commit.class, rounds);
+        report("GitMap", "serialized", Utils.serialize(blobs), GitMap.class,
+                rounds);
+        report("GitMap", "codec", Codec.encode(blobs), GitMap.class, rounds);
+    }
+
+    /** Time ROUNDS decodes of BYTES as CLS, after as many untimed ones to
+     *  warm up, and print a line for OBJECT in FORMAT. */
+    private static void report(String object, String format, byte[] bytes,
+                               Class<? extends Serializable> cls,
+                               int rounds) {
+        for (int i = 0; i < rounds; i += 1) {
+            _sink += Codec.decode(bytes, cls).hashCode();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            _sink += Codec.decode(bytes, cls).hashCode();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s %-12s %10d %12.0f %10.1f%n",
+                object, format, bytes.length, rounds / seconds,
+                bytes.length * (double) rounds / seconds / 1e6);
+    }
+
+    /** Accumulates decoded results so that decoding is not optimized
+     *  away. */
+    private static volatile int _sink;
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Measures how fast the history of one commit moves between two local
+ *  stores, as fetch moves it, as the number of objects grows.  Each
+ *  source holds one commit of COUNT files of SIZE random bytes, either
+ *  loose or repacked; each transfer goes into a fresh, empty store.
+ *  Loose objects are copied into a new pack with FileChannel.transferTo;
+ *  a repacked source is hard linked.  The number of copying threads is
+ *  set as for gitlet itself, with -Dgitlet.threads.
+ *  Usage: java gitlet.FetchBenchmark [SIZE [COUNT...]], where SIZE
+ *  defaults to 1024 and the COUNTs to 1000 4000 16000.
+ *  @author Jinho Shin
+ */
+public class FetchBenchmark {
+
+    /** Run the benchmark as described in the class comment.
+     *  @param args are SIZE and the COUNTs. */
+    public static void main(String... args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int[] counts = {1000, 4000, 16000};
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i += 1) {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        File work = Files.createTempDirectory("gitlet-fetch").toFile();
+        try {
+            System.out.printf("threads: %d%n", Workers.parallelism());
+            System.out.printf("%-7s %8s %9s %9s %11s %9s%n", "source",
+                    "objects", "MB", "ms", "objects/s", "MB/s");
+            for (int count : counts) {
+                File source = store(new File(work, "source" + count));
+                String want = fill(new ObjectStore(source), count, size);
+                report("loose", source, want, count, size,
+                        new File(work, "loose" + count));
+                new ObjectStore(source).repack();
+                report("packed", source, want, count, size,
+                        new File(work, "packed" + count));
+            }
+        } finally {
+            delete(work);
+        }
+    }
+
+    /** Fill STORE with one commit of COUNT files of SIZE random bytes,
+     *  and return its id. */
+    private static String fill(ObjectStore store, int count, int size) {
+        Random random = new Random(count);
+        GitMap files = new GitMap();
+        byte[] contents = new byte[size];
+        for (int i = 0; i < count; i += 1) {
+            random.nextBytes(contents);
+            String id = Utils.sha1(contents);
+            store.writeBlob(id, contents);
+            files.put("dir" + (i % 64) + "/file" + i, id);
+        }
+        Commit com = new Commit("benchmark", Tree.write(store, files), null,
+                null, new Date());
+        com.saveCommit(store);
+        return com.getSha();
+    }
+
+    /** Time the transfer of WANT, a commit of COUNT files of SIZE bytes,
+     *  from the store in SOURCE into a new store in TARGET, and print a
+     *  line for the kind of SOURCE. */
+    private static void report(String kind, File source, String want,
+                               int count, int size, File target)
+            throws IOException {
+        store(target);
+        long start = System.nanoTime();
+        int commits = new Transfer(new ObjectStore(source),
+                new ObjectStore(target)).send(want).size();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (commits != 1) {
+            throw new IllegalStateException("sent " + commits + " commits");
+        }
+        double mb = (double) count * size / 1e6;
+        System.out.printf("%-7s %8d %9.1f %9.1f %11.0f %9.1f%n", kind,
+                count, mb, seconds * 1e3, count / seconds, mb / seconds);
+    }
+
+    /** Create the directories of an empty store in DIR, and return
+     *  DIR. */
+    private static File store(File dir) {
+        new File(dir, ".blobs").mkdirs();
+        new File(dir, ".commits").mkdirs();
+        return dir;
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+}
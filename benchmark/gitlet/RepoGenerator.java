@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Builds synthetic repositories of any size, for benchmarks that need
+ *  more than the handful of files of the test samples.
+ *
+ *  A repository starts with a commit on master of FILES files of SIZE
+ *  bytes of text.  BRANCHES branches, b1, b2, ..., then fork from it,
+ *  and COMMITS commits are made in turn on master and each branch, each
+ *  changing CHANGES files.  Each branch only changes its own share of
+ *  the files, and master another share, so branches merge cleanly.
+ *  MERGES times, evenly spaced, the next branch is merged into master.
+ *  The head is left on master, with its files in the working directory
+ *  and nothing staged.  The same options always build the same
+ *  repository.
+ *
+ *  Objects are written straight to the object store, and the commit
+ *  graph and message index are built once at the end, so that building
+ *  a large history does not cost as much as making it commit by commit.
+ *  Usage: java gitlet.RepoGenerator DIR [--OPTION=N...], where DIR is
+ *  a new directory and the OPTIONs are commits, files, branches, merges,
+ *  size, changes and seed.
+ *  @author Jinho Shin
+ */
+public class RepoGenerator {
+
+    /** Build a repository as described in the class comment.
+     *  @param args are DIR and the options. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java gitlet.RepoGenerator DIR "
+                    + "[--OPTION=N...]");
+            System.exit(1);
+        }
+        RepoGenerator gen = new RepoGenerator();
+        for (int i = 1; i < args.length; i += 1) {
+            gen.set(args[i]);
+        }
+        File dir = new File(args[0]);
+        long start = System.nanoTime();
+        gen.generate(dir);
+        System.out.printf("Generated %s in %.1f s.%n", gen,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Set an option from ARG, of the form --OPTION=N. */
+    void set(String arg) {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            throw new IllegalArgumentException("bad option " + arg);
+        }
+        set(arg.substring(2, eq), Long.parseLong(arg.substring(eq + 1)));
+    }
+
+    /** Set OPTION to VALUE. */
+    void set(String option, long value) {
+        switch (option) {
+        case "commits":
+            _commits = (int) value;
+            break;
+        case "files":
+            _files = Math.max(1, (int) value);
+            break;
+        case "branches":
+            _branches = (int) value;
+            break;
+        case "merges":
+            _merges = (int) value;
+            break;
+        case "size":
+            _size = (int) value;
+            break;
+        case "changes":
+            _changes = Math.max(1, (int) value);
+            break;
+        case "seed":
+            _seed = value;
+            break;
+        default:
+            throw new IllegalArgumentException("unknown option " + option);
+        }
+    }
+
+    /** Return the value of OPTION. */
+    long get(String option) {
+        switch (option) {
+        case "commits":
+            return _commits;
+        case "files":
+            return _files;
+        case "branches":
+            return _branches;
+        case "merges":
+            return _merges;
+        case "size":
+            return _size;
+        case "changes":
+            return _changes;
+        case "seed":
+            return _seed;
+        default:
+            throw new IllegalArgumentException("unknown option " + option);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d commits, %d files of %d bytes, "
+                + "%d branches, %d merges", _commits, _files, _size,
+                _branches, _merges);
+    }
+
+    /** Build the repository in DIR, which must not exist yet. */
+    void generate(File dir) throws IOException {
+        if (!dir.mkdirs()) {
+            throw new IllegalArgumentException("cannot create " + dir);
+        }
+        try {
+            Main.run(new Gitlet(dir), "init");
+        } catch (ParseException excp) {
+            throw new IllegalStateException(excp);
+        }
+        File gitlet = new File(dir, ".gitlet");
+        _store = new ObjectStore(gitlet);
+        _commitDir = new File(gitlet, ".commits");
+        _time = START;
+        int lines = _branches + 1;
+        String[] tips = new String[lines];
+        String[] trees = new String[lines];
+        String[][] blobs = new String[lines][];
+
+        String init = Utils.readContentsAsString(
+                new File(gitlet, ".branches/master"));
+        blobs[0] = new String[_files];
+        Map<String, String> all = new HashMap<>();
+        for (int f = 0; f < _files; f += 1) {
+            blobs[0][f] = writeBlob(f);
+            all.put(name(f), blobs[0][f]);
+        }
+        trees[0] = Tree.write(_store, all);
+        tips[0] = commit("add files", trees[0], init, null);
+        for (int b = 1; b < lines; b += 1) {
+            tips[b] = tips[0];
+            trees[b] = trees[0];
+            blobs[b] = Arrays.copyOf(blobs[0], _files);
+        }
+
+        int[] changed = new int[lines];
+        int every = Math.max(1, _commits / (_merges + 1));
+        int merged = 0;
+        for (int i = 0; i < _commits; i += 1) {
+            int b = i % lines;
+            Map<String, String> changes = new HashMap<>();
+            for (int c = 0; c < _changes; c += 1) {
+                int f = share(b, lines, changed[b]);
+                changed[b] += 1;
+                blobs[b][f] = writeBlob(f);
+                changes.put(name(f), blobs[b][f]);
+            }
+            trees[b] = Tree.update(_store, trees[b], changes);
+            tips[b] = commit("change " + i + " on " + branch(b), trees[b],
+                    tips[b], null);
+            if (_branches > 0 && merged < _merges && (i + 1) % every == 0) {
+                int from = 1 + merged % _branches;
+                changes.clear();
+                for (int f = 0; f < _files; f += 1) {
+                    if (!blobs[from][f].equals(blobs[0][f])
+                            && f % lines == from % lines) {
+                        blobs[0][f] = blobs[from][f];
+                        changes.put(name(f), blobs[0][f]);
+                    }
+                }
+                trees[0] = Tree.update(_store, trees[0], changes);
+                tips[0] = commit("Merged " + branch(from)
+                        + " into master.", trees[0], tips[0], tips[from]);
+                merged += 1;
+            }
+        }
+
+        for (int b = 0; b < lines; b += 1) {
+            Utils.writeContents(new File(gitlet, ".branches/" + branch(b)),
+                    tips[b]);
+        }
+        for (int f = 0; f < _files; f += 1) {
+            _store.extractBlob(blobs[0][f], new File(dir, name(f)));
+        }
+        _store.graph().rebuild();
+        _store.messages().rebuild();
+    }
+
+    /** Return the name of branch B, where branch 0 is master. */
+    static String branch(int b) {
+        return b == 0 ? "master" : "b" + b;
+    }
+
+    /** Return the name of file F. */
+    static String name(int f) {
+        return String.format("file%06d.txt", f);
+    }
+
+    /** Return the file that branch B, one of LINES branches counting
+     *  master, changes for the Nth time.  Each branch has its own share
+     *  of the files unless there are fewer files than branches. */
+    private int share(int b, int lines, int n) {
+        if (b >= _files) {
+            return n % _files;
+        }
+        int count = (_files - b + lines - 1) / lines;
+        return b + lines * (n % count);
+    }
+
+    /** Write new contents for file F, and return their blob id.  The
+     *  contents are lines of random words, different every time. */
+    private String writeBlob(int f) {
+        Random random = new Random(_seed * 1000003 + _version);
+        _version += 1;
+        StringBuilder text = new StringBuilder(_size + 16);
+        text.append(name(f)).append(' ').append(_version).append('\n');
+        while (text.length() < _size) {
+            int words = 1 + random.nextInt(12);
+            for (int w = 0; w < words; w += 1) {
+                int letters = 1 + random.nextInt(8);
+                for (int c = 0; c < letters; c += 1) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                text.append(w + 1 < words ? ' ' : '\n');
+            }
+        }
+        byte[] contents = text.toString().getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(contents);
+        _store.writeBlob(id, contents);
+        return id;
+    }
+
+    /** Write a commit with message MSG, tree TREE and parents PARENT and
+     *  PARENT2, and return its id.  Commits are a minute apart. */
+    private String commit(String msg, String tree, String parent,
+                          String parent2) {
+        _time += 60 * 1000;
+        Commit com = new Commit(msg, tree, parent, parent2, new Date(_time));
+        Codec.write(new File(_commitDir, com.getSha()), com);
+        return com.getSha();
+    }
+
+    /** The time of the first commit: the start of 2020, UTC. */
+    private static final long START = 1577836800000L;
+
+    /** The number of commits, not counting merges. */
+    private int _commits = 1000;
+    /** The number of files. */
+    private int _files = 1000;
+    /** The number of branches besides master. */
+    private int _branches = 4;
+    /** The number of merges into master. */
+    private int _merges = 10;
+    /** The approximate size of each file, in bytes. */
+    private int _size = 1024;
+    /** The number of files changed by each commit. */
+    private int _changes = 3;
+    /** The seed of the contents. */
+    private long _seed = 1;
+
+    /** The store being filled. */
+    private ObjectStore _store;
+    /** Its directory of loose commits. */
+    private File _commitDir;
+    /** The time of the last commit. */
+    private long _time;
+    /** The number of file contents written so far. */
+    private int _version;
+}
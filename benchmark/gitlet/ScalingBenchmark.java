@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** Times every kind of gitlet command against repositories built by
+ *  RepoGenerator, as one of their dimensions grows, to show which
+ *  commands stop scaling and where.
+ *
+ *  For each value N of the option AXIS, a repository is generated with
+ *  AXIS set to N and every other option at its default, or as given.
+ *  Each command then runs in a new Gitlet, as it would in a new
+ *  process but without the cost of starting a JVM: the commands that
+ *  only read are run REPEAT times and the median is kept; the others
+ *  run once, in an order that leaves each something to do.  A small
+ *  repository is measured first, and not reported, to warm up.  A table
+ *  gives the milliseconds each command took at each N and, in the last
+ *  column, the exponent k such that its time grows as N^k between the
+ *  last two Ns: about 0 for a command that does not depend on AXIS, 1
+ *  for one that is linear in it.
+ *  Usage: java gitlet.ScalingBenchmark [AXIS [N...]] [--OPTION=N...],
+ *  where AXIS is one of the RepoGenerator options and defaults to
+ *  commits, and the Ns default to 100 1000 10000.
+ *  @author Jinho Shin
+ */
+public class ScalingBenchmark {
+
+    /** Times the read-only commands are run. */
+    private static final int REPEAT = 3;
+
+    /** The number of commits and files of the repository measured first
+     *  and not reported, so that the code measured has been compiled. */
+    private static final int WARMUP = 50;
+
+    /** Run the benchmark as described in the class comment.
+     *  @param args are AXIS, the Ns and the options. */
+    public static void main(String... args) throws IOException {
+        String axis = "commits";
+        List<Long> values = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].startsWith("--")) {
+                options.add(args[i]);
+            } else if (i == 0) {
+                axis = args[i];
+            } else {
+                values.add(Long.parseLong(args[i]));
+            }
+        }
+        if (values.isEmpty()) {
+            values = Arrays.asList(100L, 1000L, 10000L);
+        }
+        File work = Files.createTempDirectory("gitlet-scaling").toFile();
+        Map<String, List<Double>> times = new LinkedHashMap<>();
+        try {
+            RepoGenerator warmup = new RepoGenerator();
+            warmup.set("commits", WARMUP);
+            warmup.set("files", WARMUP);
+            warmup.generate(new File(work, "warmup"));
+            measure(new File(work, "warmup"), warmup, new HashMap<>());
+            for (long n : values) {
+                RepoGenerator gen = new RepoGenerator();
+                for (String option : options) {
+                    gen.set(option);
+                }
+                gen.set(axis, n);
+                File dir = new File(work, axis + n);
+                long start = System.nanoTime();
+                gen.generate(dir);
+                System.err.printf("%s: generated %s in %.1f s%n", axis + n,
+                        gen, (System.nanoTime() - start) / 1e9);
+                measure(dir, gen, times);
+                delete(dir);
+            }
+        } finally {
+            delete(work);
+        }
+        report(axis, values, times);
+    }
+
+    /** Run every command against the repository generated by GEN in
+     *  DIR, adding the milliseconds each took to TIMES. */
+    private static void measure(File dir, RepoGenerator gen,
+                                Map<String, List<Double>> times)
+            throws IOException {
+        ObjectStore store = new ObjectStore(new File(dir, ".gitlet"));
+        String head = Utils.readContentsAsString(
+                new File(dir, ".gitlet/.branches/master"));
+        String parent = store.readCommit(head).getParent();
+        String message = store.readCommit(head).getMessage();
+        String file = RepoGenerator.name(0);
+        String other = gen.get("branches") > 0 ? RepoGenerator.branch(1)
+            : null;
+
+        time(times, "status (hashing)", 1, dir, "status");
+        time(times, "status", REPEAT, dir, "status");
+        time(times, "log", REPEAT, dir, "log");
+        time(times, "global-log", REPEAT, dir, "global-log");
+        time(times, "find", REPEAT, dir, "find", message);
+        time(times, "diff", REPEAT, dir, "diff", parent, head);
+        time(times, "branch", 1, dir, "branch", "scaling");
+        time(times, "checkout branch", 1, dir, "checkout", "scaling");
+        time(times, "checkout master", 1, dir, "checkout", "master");
+        Utils.writeContents(new File(dir, file), "changed by the benchmark\n");
+        time(times, "add", 1, dir, "add", file);
+        time(times, "commit", 1, dir, "commit", "scaling change");
+        if (other != null) {
+            time(times, "merge", 1, dir, "merge", other);
+        }
+        time(times, "reset", 1, dir, "reset", head);
+        time(times, "rm-branch", 1, dir, "rm-branch", "scaling");
+        time(times, "repack", 1, dir, "repack");
+        time(times, "gc", 1, dir, "gc", "--grace=0");
+    }
+
+    /** Run ARGS in the repository in DIR ROUNDS times, and add the
+     *  median milliseconds taken to TIMES under LABEL. */
+    private static void time(Map<String, List<Double>> times, String label,
+                             int rounds, File dir, String... args)
+            throws IOException {
+        double[] ms = new double[rounds];
+        PrintStream out = System.out;
+        System.setOut(NULL);
+        try {
+            for (int i = 0; i < rounds; i += 1) {
+                long start = System.nanoTime();
+                try {
+                    Main.run(new Gitlet(dir), args);
+                } catch (GitletException excp) {
+                    System.err.printf("%s: %s%n", label, excp.getMessage());
+                } catch (ParseException excp) {
+                    throw new IllegalStateException(excp);
+                }
+                ms[i] = (System.nanoTime() - start) / 1e6;
+            }
+        } finally {
+            System.setOut(out);
+        }
+        Arrays.sort(ms);
+        times.computeIfAbsent(label, k -> new ArrayList<>())
+            .add(ms[rounds / 2]);
+    }
+
+    /** Print the table of TIMES for the VALUES of AXIS. */
+    private static void report(String axis, List<Long> values,
+                               Map<String, List<Double>> times) {
+        System.out.printf("%-18s", "ms by " + axis);
+        for (long n : values) {
+            System.out.printf(" %10d", n);
+        }
+        System.out.printf(" %8s%n", "growth");
+        for (Map.Entry<String, List<Double>> e : times.entrySet()) {
+            List<Double> ms = e.getValue();
+            System.out.printf("%-18s", e.getKey());
+            for (double t : ms) {
+                System.out.printf(" %10.1f", t);
+            }
+            for (int i = ms.size(); i < values.size(); i += 1) {
+                System.out.printf(" %10s", "-");
+            }
+            int last = ms.size() - 1;
+            if (last >= 1) {
+                double k = Math.log(Math.max(ms.get(last), 0.01)
+                                    / Math.max(ms.get(last - 1), 0.01))
+                    / Math.log((double) values.get(last)
+                               / values.get(last - 1));
+                System.out.printf(" %8.2f", k);
+            }
+            System.out.println();
+        }
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void delete(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** A stream that discards everything written to it. */
+    private static final PrintStream NULL =
+        new PrintStream(OutputStream.nullOutputStream());
+}
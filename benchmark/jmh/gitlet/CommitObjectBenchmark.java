@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures writing a commit to a file and reading it back, with
+ *  Utils.writeObject and Utils.readObject, as commits were first
+ *  stored, and with the Codec format they are stored in now.
+ *  @author Jinho Shin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitObjectBenchmark {
+
+    /** Create the commit and files holding it in both formats. */
+    @Setup
+    public void setup() throws IOException {
+        _commit = new Commit("benchmark commit", Utils.sha1("tree"),
+                Utils.sha1("parent"), null, new Date());
+        _serialized = File.createTempFile("gitlet-commit", ".ser");
+        _encoded = File.createTempFile("gitlet-commit", ".codec");
+        _scratch = File.createTempFile("gitlet-commit", ".out");
+        Utils.writeObject(_serialized, _commit);
+        Codec.write(_encoded, _commit);
+    }
+
+    /** Delete the files. */
+    @TearDown
+    public void tearDown() {
+        _serialized.delete();
+        _encoded.delete();
+        _scratch.delete();
+    }
+
+    /** Write the commit with Java serialization. */
+    @Benchmark
+    public void writeSerialized() {
+        Utils.writeObject(_scratch, _commit);
+    }
+
+    /** Read a commit written with Java serialization. */
+    @Benchmark
+    public Commit readSerialized() {
+        return Utils.readObject(_serialized, Commit.class);
+    }
+
+    /** Write the commit in the Codec format. */
+    @Benchmark
+    public void writeCodec() {
+        Codec.write(_scratch, _commit);
+    }
+
+    /** Read a commit written in the Codec format. */
+    @Benchmark
+    public Commit readCodec() {
+        return Codec.read(_encoded, Commit.class);
+    }
+
+    /** The commit. */
+    private Commit _commit;
+
+    /** The commit, serialized. */
+    private File _serialized;
+
+    /** The commit, encoded. */
+    private File _encoded;
+
+    /** The file written. */
+    private File _scratch;
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures writing a GitMap of FILES entries, such as the staging area
+ *  or the files of a commit, to a file and reading it back, with
+ *  Utils.writeObject and Utils.readObject and with the Codec format.
+ *  @author Jinho Shin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapObjectBenchmark {
+
+    /** The number of entries in the map. */
+    @Param({"10", "1000", "100000"})
+    public int files;
+
+    /** Create the map and files holding it in both formats. */
+    @Setup
+    public void setup() throws IOException {
+        _map = new GitMap();
+        for (int i = 0; i < files; i += 1) {
+            _map.put("dir" + (i % 64) + "/file" + i + ".txt",
+                    Utils.sha1("contents" + i));
+        }
+        _serialized = File.createTempFile("gitlet-map", ".ser");
+        _encoded = File.createTempFile("gitlet-map", ".codec");
+        _scratch = File.createTempFile("gitlet-map", ".out");
+        Utils.writeObject(_serialized, _map);
+        Codec.write(_encoded, _map);
+    }
+
+    /** Delete the files. */
+    @TearDown
+    public void tearDown() {
+        _serialized.delete();
+        _encoded.delete();
+        _scratch.delete();
+    }
+
+    /** Write the map with Java serialization. */
+    @Benchmark
+    public void writeSerialized() {
+        Utils.writeObject(_scratch, _map);
+    }
+
+    /** Read a map written with Java serialization. */
+    @Benchmark
+    public GitMap readSerialized() {
+        return Utils.readObject(_serialized, GitMap.class);
+    }
+
+    /** Write the map in the Codec format. */
+    @Benchmark
+    public void writeCodec() {
+        Codec.write(_scratch, _map);
+    }
+
+    /** Read a map written in the Codec format. */
+    @Benchmark
+    public GitMap readCodec() {
+        return Codec.read(_encoded, GitMap.class);
+    }
+
+    /** The map. */
+    private GitMap _map;
+
+    /** The map, serialized. */
+    private File _serialized;
+
+    /** The map, encoded. */
+    private File _encoded;
+
+    /** The file written. */
+    private File _scratch;
+}
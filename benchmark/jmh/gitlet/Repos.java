@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** Scratch repositories for the JMH benchmarks, built directly through
+ *  the object store so that setting up a large one does not take as
+ *  long as the benchmark itself.
+ *  @author Jinho Shin
+ */
+class Repos {
+
+    /** Return a new temporary directory holding a freshly initialized
+     *  repository. */
+    static File create() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-jmh").toFile();
+        run(new Gitlet(dir), "init");
+        return dir;
+    }
+
+    /** Run the command ARGS against G, discarding what it prints. */
+    static void run(Gitlet g, String... args) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(NULL);
+        try {
+            Main.run(g, args);
+        } catch (ParseException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Point branch NAME of the repository in DIR at commit ID. */
+    static void setBranch(File dir, String name, String id) {
+        Utils.writeContents(new File(dir, ".gitlet/.branches/" + name), id);
+    }
+
+    /** Return the id of the commit branch NAME of the repository in DIR
+     *  points at. */
+    static String branch(File dir, String name) {
+        return Utils.readContentsAsString(
+                new File(dir, ".gitlet/.branches/" + name));
+    }
+
+    /** Delete DIR and everything in it. */
+    static void delete(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** A stream that discards everything written to it. */
+    static final PrintStream NULL =
+        new PrintStream(OutputStream.nullOutputStream());
+}
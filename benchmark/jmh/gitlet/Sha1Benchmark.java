@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures Utils.sha1 on contents of SIZE bytes, given as a byte array,
+ *  as a String, as they are passed for commits, and as a file, which is
+ *  read a buffer at a time.
+ *  @author Jinho Shin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha1Benchmark {
+
+    /** The number of bytes hashed. */
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    /** Create the contents hashed. */
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(size);
+        _bytes = new byte[size];
+        random.nextBytes(_bytes);
+        char[] text = new char[size];
+        for (int i = 0; i < size; i += 1) {
+            text[i] = (char) ('a' + random.nextInt(26));
+        }
+        _text = new String(text);
+        _file = File.createTempFile("gitlet-sha1", null);
+        Utils.writeContents(_file, _bytes);
+    }
+
+    /** Delete the file hashed. */
+    @TearDown
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Hash a byte array. */
+    @Benchmark
+    public String bytes() {
+        return Utils.sha1(_bytes);
+    }
+
+    /** Hash a String. */
+    @Benchmark
+    public String string() {
+        return Utils.sha1(_text);
+    }
+
+    /** Hash a file. */
+    @Benchmark
+    public String file() {
+        return Utils.sha1(_file);
+    }
+
+    /** The contents as bytes. */
+    private byte[] _bytes;
+
+    /** The contents as text. */
+    private String _text;
+
+    /** A file holding the bytes. */
+    private File _file;
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures Gitlet.findSplitPoint between two commits of a synthetic
+ *  history of COMMITS commits with one of these SHAPEs:
+ *    linear:   one line of commits, split between its tip and the commit
+ *              halfway down, which is the split point itself;
+ *    forked:   a trunk of half the commits that then forks into two
+ *              branches of a quarter each, split between their tips;
+ *    merges:   two branches of half the commits each, every tenth commit
+ *              on each merging in the other, split between their tips.
+ *  @author Jinho Shin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitPointBenchmark {
+
+    /** The shape of the history, as in the class comment. */
+    @Param({"linear", "forked", "merges"})
+    public String shape;
+
+    /** The number of commits in the history. */
+    @Param({"100", "10000"})
+    public int commits;
+
+    /** Build the history. */
+    @Setup
+    public void setup() throws IOException {
+        _dir = Repos.create();
+        File gitlet = new File(_dir, ".gitlet");
+        _commits = new File(gitlet, ".commits");
+        _tree = Tree.write(new ObjectStore(gitlet), new GitMap());
+        String root = Repos.branch(_dir, "master");
+        switch (shape) {
+        case "linear":
+            _right = line(root, commits / 2);
+            _left = line(_right, commits - commits / 2);
+            break;
+        case "forked":
+            String trunk = line(root, commits / 2);
+            _left = line(trunk, commits / 4);
+            _right = line(trunk, commits - commits / 2 - commits / 4);
+            break;
+        case "merges":
+            _left = root;
+            _right = root;
+            for (int i = 1; i <= commits / 2; i += 1) {
+                String left = commit(_left, i % 10 == 0 ? _right : null);
+                _right = commit(_right, i % 10 == 0 ? _left : null);
+                _left = left;
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown shape " + shape);
+        }
+        new ObjectStore(gitlet).graph().rebuild();
+        _gitlet = new Gitlet(_dir);
+    }
+
+    /** Delete the repository. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Repos.delete(_dir);
+    }
+
+    /** Find the split point of the two commits. */
+    @Benchmark
+    public String findSplitPoint() {
+        return _gitlet.findSplitPoint(_left, _right);
+    }
+
+    /** Write a line of N commits after PARENT, and return the last. */
+    private String line(String parent, int n) {
+        for (int i = 0; i < n; i += 1) {
+            parent = commit(parent, null);
+        }
+        return parent;
+    }
+
+    /** Write a commit with parents PARENT and PARENT2, and return its
+     *  id.  Commits are written straight to their files, leaving the
+     *  commit graph to be built once at the end. */
+    private String commit(String parent, String parent2) {
+        _time += 1000;
+        Commit com = new Commit("commit " + _time, _tree, parent, parent2,
+                new Date(_time));
+        Codec.write(new File(_commits, com.getSha()), com);
+        return com.getSha();
+    }
+
+    /** The repository's working directory. */
+    private File _dir;
+
+    /** The directory of loose commits. */
+    private File _commits;
+
+    /** The empty tree, shared by every commit. */
+    private String _tree;
+
+    /** The time of the last commit written. */
+    private long _time;
+
+    /** The commits whose split point is found. */
+    private String _left, _right;
+
+    /** The repository. */
+    private Gitlet _gitlet;
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the status command in a repository whose head commit has
+ *  FILES files, all unchanged in the working directory, as one command
+ *  of a long-lived process such as the daemon (warm) and as the first
+ *  command of a new Gitlet, which must read the repository's files
+ *  again (cold).
+ *  @author Jinho Shin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusBenchmark {
+
+    /** The number of files in the repository. */
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    /** Build the repository and run status once, so that the ids of
+     *  the working files are cached. */
+    @Setup
+    public void setup() throws IOException {
+        _dir = Repos.create();
+        ObjectStore store = new ObjectStore(new File(_dir, ".gitlet"));
+        GitMap blobs = new GitMap();
+        for (int i = 0; i < files; i += 1) {
+            String name = "file" + i + ".txt";
+            byte[] contents = ("line of file " + i + "\n").getBytes();
+            String id = Utils.sha1(contents);
+            Utils.writeContents(new File(_dir, name), contents);
+            store.writeBlob(id, contents);
+            blobs.put(name, id);
+        }
+        Commit com = new Commit("files", Tree.write(store, blobs),
+                Repos.branch(_dir, "master"), null, new Date());
+        com.saveCommit(store);
+        Repos.setBranch(_dir, "master", com.getSha());
+        _gitlet = new Gitlet(_dir);
+        Repos.run(_gitlet, "status");
+    }
+
+    /** Delete the repository. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Repos.delete(_dir);
+    }
+
+    /** Run status in a Gitlet that has run it before. */
+    @Benchmark
+    public void warm() throws IOException {
+        Repos.run(_gitlet, "status");
+    }
+
+    /** Run status in a new Gitlet. */
+    @Benchmark
+    public void cold() throws IOException {
+        Repos.run(new Gitlet(_dir), "status");
+    }
+
+    /** The repository's working directory. */
+    private File _dir;
+
+    /** The Gitlet that runs the warm status. */
+    private Gitlet _gitlet;
+}
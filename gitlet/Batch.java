@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs a script of gitlet commands, one per line, in one process and
+ *  against one Gitlet, so that after the first command none pays for
+ *  starting a JVM, and each finds the commit graph, message index, packs
+ *  and staging area of the last already loaded.
+ *
+ *  A line is split into arguments as a shell would, at spaces, except
+ *  within single or double quotes; a backslash outside single quotes
+ *  takes the next character literally.  Blank lines and lines starting
+ *  with # are skipped.  The output of each command is framed by a line
+ *  ">>> " followed by the command's line and a line "<<< ok" or
+ *  "<<< error", the latter when the command failed, printing its error
+ *  message, or the line could not be split.  No gitlet output starts
+ *  with ">>> " or "<<< ", so the frames can be found without knowing
+ *  what each command prints.  Failed commands change nothing, and the
+ *  script goes on after them.
+ *  @author Jinho Shin
+ */
+class Batch {
+
+    /** A batch running commands against G. */
+    Batch(Gitlet g) {
+        _gitlet = g;
+    }
+
+    /** Run every command in SCRIPT. */
+    void run(BufferedReader script) throws IOException {
+        PrintStream out = System.out;
+        for (String line = script.readLine(); line != null;
+             line = script.readLine()) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            out.println(">>> " + trimmed);
+            boolean ok = false;
+            try {
+                String[] args = split(trimmed);
+                String[] command = Main.command(args);
+                if (command.length > 0 && (command[0].equals("batch")
+                                           || command[0].equals("daemon"))) {
+                    throw Utils.error("Cannot run %s in a batch.",
+                            command[0]);
+                }
+                Main.run(_gitlet, args);
+                ok = true;
+            } catch (GitletException excp) {
+                out.println(excp.getMessage());
+            } catch (IOException | ParseException | RuntimeException excp) {
+                excp.printStackTrace();
+                out.println("Internal error: " + excp);
+            }
+            out.println(ok ? "<<< ok" : "<<< error");
+        }
+        out.flush();
+    }
+
+    /** Return the arguments on LINE, split as described in the class
+     *  comment. */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (arg != null) {
+                    args.add(arg.toString());
+                    arg = null;
+                }
+                continue;
+            }
+            if (arg == null) {
+                arg = new StringBuilder();
+            }
+            if (c == '\\' && quote != '\'') {
+                i += 1;
+                if (i == line.length()) {
+                    throw Utils.error("Unfinished escape.");
+                }
+                arg.append(line.charAt(i));
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else {
+                arg.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unmatched quote.");
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** The repository commands are run against. */
+    private final Gitlet _gitlet;
+}
@@ -0,0 +1,60 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.text.ParseException;
+
+/** A thin front end to a running gitlet daemon.  It passes its arguments
+ *  to the daemon listening in .gitlet/daemon.sock and copies back what
+ *  the command printed, so it loads almost none of gitlet itself.  When
+ *  no daemon is running, it runs the command in this process, exactly
+ *  as gitlet.Main would.
+ *  @author Jinho Shin
+ */
+public class Client {
+    /** Usage: java gitlet.Client ARGS, with ARGS as for gitlet.Main. */
+    public static void main(String... args)
+            throws IOException, ParseException {
+        File socket = new File(new File(System.getProperty("user.dir"),
+                ".gitlet"), Daemon.SOCKET);
+        SocketChannel daemon = socket.exists() ? connect(socket) : null;
+        if (daemon == null) {
+            Main.main(args);
+            return;
+        }
+        try (daemon) {
+            OutputStream request = Channels.newOutputStream(daemon);
+            request.write(Daemon.writeArgs(args));
+            request.flush();
+            daemon.shutdownOutput();
+            InputStream reply = Channels.newInputStream(daemon);
+            reply.transferTo(System.out);
+            System.out.flush();
+        }
+        System.exit(0);
+    }
+
+    /** Return a connection to the daemon listening on SOCKET, or null if
+     *  none is. */
+    static SocketChannel connect(File socket) {
+        try {
+            SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/** The binary format of commits and of the staging files.  Each encoded
+ *  object starts with a magic number, a format version and a kind, and
+ *  is followed by its fields: strings as a byte count and UTF-8 bytes,
+ *  maps and lists as a count followed by their elements.  Counts are
+ *  variable-length, seven bits to a byte, and are one more than the
+ *  count, so that 0 can stand for null.  This replaces Java
+ *  serialization, whose class descriptors and reflection dominated the
+ *  cost of reading commits.
+ *
+ *  Files written by Java serialization start with 0xACED, which can
+ *  never start this format, so they are still read, through
+ *  Utils.deserialize.  They are rewritten in this format the next time
+ *  they are saved, or, for commits, when they are repacked.
+ *  @author Jinho Shin
+ */
+class Codec {
+
+    /** Kind of an encoded commit. */
+    static final byte COMMIT = 1;
+
+    /** Kind of an encoded GitMap. */
+    static final byte MAP = 2;
+
+    /** Kind of an encoded GitArray. */
+    static final byte ARRAY = 3;
+
+    /** Kind of an encoded Tree. */
+    static final byte TREE = 4;
+
+    /** The current format version.  Version 2 added trees, and commits
+     *  that refer to a tree instead of listing their files.  Version 3
+     *  lists the files again for commits made before trees, which have
+     *  no tree to refer to. */
+    static final byte VERSION = 3;
+
+    /** Return the encoding of OBJ, which must be a Commit, Tree, GitMap
+     *  or GitArray. */
+    static byte[] encode(Object obj) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            if (obj instanceof Commit) {
+                out.writeByte(COMMIT);
+                ((Commit) obj).encode(out);
+            } else if (obj instanceof Tree) {
+                out.writeByte(TREE);
+                ((Tree) obj).encode(out);
+            } else if (obj instanceof GitMap) {
+                out.writeByte(MAP);
+                writeMap(out, (GitMap) obj);
+            } else if (obj instanceof GitArray) {
+                out.writeByte(ARRAY);
+                GitArray array = (GitArray) obj;
+                writeCount(out, array.size());
+                for (String s : array) {
+                    writeString(out, s);
+                }
+            } else {
+                throw new IllegalArgumentException("cannot encode "
+                        + obj.getClass().getName());
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the object of type T encoded in BYTES, in this format or
+     *  by Java serialization, casting it to EXPECTEDCLASS. */
+    static <T extends Serializable> T decode(byte[] bytes,
+                                             Class<T> expectedClass) {
+        if (isSerialized(bytes)) {
+            return Utils.deserialize(bytes, expectedClass);
+        }
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not a gitlet object");
+            }
+            int version = in.readByte();
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("unknown format version "
+                        + version);
+            }
+            Object result;
+            switch (in.readByte()) {
+            case COMMIT:
+                result = Commit.decode(in, version);
+                break;
+            case TREE:
+                result = Tree.decode(in, version);
+                break;
+            case MAP:
+                result = readMap(in);
+                break;
+            case ARRAY:
+                GitArray array = new GitArray();
+                for (int n = readCount(in); n > 0; n -= 1) {
+                    array.add(readString(in));
+                }
+                result = array;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown object kind");
+            }
+            T obj = expectedClass.cast(result);
+            Trace.decoded(expectedClass);
+            return obj;
+        } catch (IOException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the object of type T stored in FILE, casting it to
+     *  EXPECTEDCLASS. */
+    static <T extends Serializable> T read(File file,
+                                           Class<T> expectedClass) {
+        return decode(Utils.readContents(file), expectedClass);
+    }
+
+    /** Write the encoding of OBJ to FILE. */
+    static void write(File file, Object obj) {
+        Utils.writeContents(file, encode(obj));
+    }
+
+    /** Return true iff BYTES were written by Java serialization. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac
+            && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /** Write S, which may be null, to OUT. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            writeCount(out, -1);
+        } else {
+            byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            writeCount(out, utf.length);
+            out.write(utf);
+        }
+    }
+
+    /** Return a string, possibly null, read from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        int length = readCount(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf = new byte[length];
+        in.readFully(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+
+    /** Write MAP, which may be null, to OUT. */
+    static void writeMap(DataOutputStream out, Map<String, String> map)
+        throws IOException {
+        if (map == null) {
+            writeCount(out, -1);
+            return;
+        }
+        writeCount(out, map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    /** Return a map read from IN, or null if a null map was written. */
+    static GitMap readMap(DataInputStream in) throws IOException {
+        int n = readCount(in);
+        if (n < 0) {
+            return null;
+        }
+        GitMap result = new GitMap(n);
+        for (; n > 0; n -= 1) {
+            String key = readString(in);
+            result.put(key, readString(in));
+        }
+        return result;
+    }
+
+    /** Write N, a count or -1 for null, to OUT. */
+    static void writeCount(DataOutputStream out, int n) throws IOException {
+        long v = n + 1L;
+        while (v >= 0x80) {
+            out.writeByte((int) (v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    /** Return a count, or -1 for null, read from IN. */
+    static int readCount(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return (int) (v - 1);
+            }
+        }
+    }
+
+    /** Magic number at the start of every encoded object ("GLTB"). */
+    private static final int MAGIC = 0x474c5442;
+}
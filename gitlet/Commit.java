@@ -1,8 +1,10 @@
 package gitlet;
 
-import java.io.File;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -15,39 +17,77 @@ public class Commit implements Serializable {
 
     /** Create a commit.
      * @param message of the commit
-     * @param blobs the files tracked
+     * @param tree the id of the tree of the files tracked
      * @param parent of the commit
      * @param parent2 for merges
      * @param time of the creation
      * */
-    Commit(String message, GitMap blobs,
-           String parent, String parent2, Date time) throws IOException {
+    Commit(String message, String tree,
+           String parent, String parent2, Date time) {
         _message = message;
-        _blobs = blobs;
+        _tree = tree;
         _parent = parent;
         _parent2 = parent2;
-        String pattern = "EEE MMM d HH:mm:ss yyyy Z";
-        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
         _time = sdf.format(time);
         List<Object> all = new ArrayList<>();
-        if (_message != null) {
-            all.add(_message);
-        }
-        if (_blobs != null) {
-            for (String s : _blobs.keySet()) {
-                all.add(s);
+        all.add(_message);
+        all.add("\0" + _tree);
+        for (String p : new String[] {_parent, _parent2}) {
+            if (p != null) {
+                all.add("\0" + p);
             }
         }
-        all.add(_time);
+        all.add("\0" + _time);
         _sha = Utils.sha1(all);
-        saveCommit();
     }
 
-    /** Save commit for persistence. */
-    public void saveCommit() throws IOException {
-        File newCommit = new File(new File(".gitlet", ".commits"), _sha);
-        newCommit.createNewFile();
-        Utils.writeObject(newCommit, this);
+    /** An empty commit, to be filled in by decode. */
+    private Commit() {
+    }
+
+    /** Write the fields of this commit to OUT, in the format of
+     * Codec.VERSION.  A commit made before trees keeps its files.
+     * @param out is the stream to write to.
+     * @throws IOException */
+    void encode(DataOutputStream out) throws IOException {
+        Codec.writeString(out, _sha);
+        Codec.writeString(out, _message);
+        Codec.writeString(out, _time);
+        Codec.writeString(out, _parent);
+        Codec.writeString(out, _parent2);
+        Codec.writeString(out, _tree);
+        if (_tree == null) {
+            Codec.writeMap(out, _blobs);
+        }
+    }
+
+    /** Read a commit written by encode.
+     * @param in is the stream to read from.
+     * @param version is the format version it was written in.
+     * @return the commit.
+     * @throws IOException */
+    static Commit decode(DataInputStream in, int version)
+            throws IOException {
+        Commit result = new Commit();
+        result._sha = Codec.readString(in);
+        result._message = Codec.readString(in);
+        result._time = Codec.readString(in);
+        result._parent = Codec.readString(in);
+        result._parent2 = Codec.readString(in);
+        if (version >= 2) {
+            result._tree = Codec.readString(in);
+        }
+        if (version != 2 && result._tree == null) {
+            result._blobs = Codec.readMap(in);
+        }
+        return result;
+    }
+
+    /** Save commit for persistence.
+     * @param store is the object store to save it in. */
+    public void saveCommit(ObjectStore store) {
+        store.writeCommit(this);
     }
 
     /** Get method for message.
@@ -62,6 +102,16 @@ public class Commit implements Serializable {
         return _time;
     }
 
+    /** Get method for the time in milliseconds.
+     * @return the time since the epoch */
+    public long getTimestamp() {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(_time).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** Get method for hte ID.
      * @return the Sha */
     public String getSha() {
@@ -80,18 +130,67 @@ public class Commit implements Serializable {
         return _parent2;
     }
 
-    /** Get method for the blobs.
+    /** Get method for the tree.
+     * @return the id of the tree (null for commits made before trees) */
+    public String getTree() {
+        return _tree;
+    }
+
+    /** Get method for the blobs, read from the tree on first use.
      * @return the blobs */
     public GitMap getBlobs() {
+        if (_blobs == null) {
+            _blobs = Tree.files(_store, tree());
+        }
         return _blobs;
     }
 
+    /** Get method for the blob of one file, without reading the whole
+     * tree.
+     * @param name is the name of the file.
+     * @return the id of the blob (null if the file is not tracked) */
+    public String getBlob(String name) {
+        if (_blobs == null) {
+            return Tree.lookup(_store, tree(), name);
+        }
+        return _blobs.get(name);
+    }
+
+    /** Return the id of the tree, for a commit that lists no files.
+     * @return the id of the tree */
+    private String tree() {
+        if (_tree == null) {
+            throw Utils.error("Commit %s has lost its files.", _sha);
+        }
+        return _tree;
+    }
+
+    /** Set the object store holding this commit's trees.
+     * @param store is the object store. */
+    void setStore(ObjectStore store) {
+        _store = store;
+    }
+
+    /** Format of the time of a commit. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+
+    /** Serialization version, fixed so that repositories written before
+     *  this class last changed stay readable. */
+    private static final long serialVersionUID = -8526668182740891270L;
+
     /** The message. */
     private String _message;
 
-    /** The files/blobs linked to this commit. */
+    /** The files/blobs linked to this commit.  Stored only by commits
+     *  made before trees; otherwise filled in from the tree. */
     private GitMap _blobs;
 
+    /** The id of the tree of the files (null for older commits). */
+    private String _tree;
+
+    /** The object store holding the tree. */
+    private transient ObjectStore _store;
+
     /** The parent. */
     private String _parent;
 
@@ -0,0 +1,843 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** The shape of a repository's history, kept in .gitlet/commit-graph so
+ *  that ancestry questions can be answered without deserializing any
+ *  commit.  The file is a table of fixed-width records sorted by commit
+ *  ID.  Each record holds the commit's parents as positions in the same
+ *  table, its generation number (one more than that of its highest
+ *  parent, so every ancestor has a smaller one) and its timestamp.  The
+ *  table is memory-mapped and looked up by binary search.
+ *
+ *  Rewriting the table for every new commit would make a commit cost as
+ *  much as the history is long, so new commits are instead appended, in
+ *  records of the same form, to .gitlet/commit-graph.add, after the
+ *  commits of the table: their positions follow those of the table, and
+ *  each comes after its parents.  The appended records are read into
+ *  memory and looked up by hashing.  A repository written by an older
+ *  version, with neither file, has the graph built from every commit
+ *  in the store the first time it is used.  Only repack and gc
+ *  merge the two into a new table, which is written to a temporary file
+ *  and renamed over the old one.
+ *
+ *  Each table carries a random stamp, which the appended file repeats
+ *  in its header, so records appended to an older table, which refer to
+ *  its positions, are recognized and dropped.  Appending and merging
+ *  lock the appended file, so that processes sharing a repository add
+ *  each commit once.  A record cut short by a crash is dropped.
+ *  @author Jinho Shin
+ */
+class CommitGraph {
+
+    /** Position used for a missing parent. */
+    static final int NONE = -1;
+
+    /** The commit graph stored in .gitlet directory GITLET, describing
+     *  the commits in STORE. */
+    CommitGraph(File gitlet, ObjectStore store) {
+        _file = new File(gitlet, "commit-graph");
+        _addFile = new File(gitlet, "commit-graph.add");
+        _store = store;
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        load();
+        return _size + _added;
+    }
+
+    /** Return the position of commit ID, adding it and its ancestors to
+     *  the graph if they are missing, or NONE if there is no such
+     *  commit. */
+    int position(String id) {
+        int pos = find(id);
+        if (pos == NONE && id != null && _store.hasCommit(id)) {
+            add(Collections.singletonList(_store.readCommit(id)));
+            pos = find(id);
+        }
+        return pos;
+    }
+
+    /** Forget the mapped table and the appended records if another
+     *  process has since replaced the table or appended to the other
+     *  file. */
+    void refresh() {
+        if (!_loaded) {
+            return;
+        }
+        if (_table == null ? _file.isFile()
+                : _file.lastModified() != _mapped
+                  || _file.length() != _table.capacity()
+                  || fileStamp() != _stamp) {
+            forget();
+        } else if (_addBytes != null
+                   && _addFile.length() != _addLength) {
+            _addBytes = null;
+        }
+    }
+
+    /** Return the ID of the commit at POS. */
+    String id(int pos) {
+        return Pack.toHex(records(pos), record(pos));
+    }
+
+    /** Return the position of the first parent of POS, or NONE. */
+    int parent(int pos) {
+        return records(pos).getInt(record(pos) + ID_BYTES);
+    }
+
+    /** Return the position of the second parent of POS, or NONE. */
+    int parent2(int pos) {
+        return records(pos).getInt(record(pos) + ID_BYTES + 4);
+    }
+
+    /** Return the generation number of POS; a root has generation 1. */
+    int generation(int pos) {
+        return records(pos).getInt(record(pos) + ID_BYTES + 8);
+    }
+
+    /** Return the timestamp of POS in milliseconds. */
+    long timestamp(int pos) {
+        return records(pos).getLong(record(pos) + ID_BYTES + 12);
+    }
+
+    /** Return the ids of the commits whose id starts with PREFIX, in
+     *  order, stopping after LIMIT of them.  Since the table is sorted,
+     *  its matches are adjacent and are found by binary search; the
+     *  appended commits are few and are all checked.  Every commit is
+     *  added to the graph as it is written, so a prefix matching neither
+     *  matches no commit. */
+    List<String> resolve(String prefix, int limit) {
+        if (missing()) {
+            rebuild();
+        }
+        load();
+        List<String> result = new ArrayList<>();
+        String key = prefix.toLowerCase();
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id(mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = lo; pos < _size && result.size() < limit
+                 && id(pos).startsWith(key); pos += 1) {
+            result.add(id(pos));
+        }
+        for (String id : _addedIDs.keySet()) {
+            if (id.startsWith(key)) {
+                result.add(id);
+            }
+        }
+        Collections.sort(result);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** Return true iff commit ANCESTOR is ID or one of its ancestors. */
+    boolean isAncestor(String ancestor, String id) {
+        int target = position(ancestor);
+        int start = position(id);
+        if (target == NONE || start == NONE) {
+            return false;
+        }
+        int floor = generation(target);
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        seen.add(start);
+        while (!work.isEmpty()) {
+            int pos = work.pop();
+            if (pos == target) {
+                return true;
+            }
+            for (int p : new int[] {parent(pos), parent2(pos)}) {
+                if (p != NONE && generation(p) >= floor && seen.add(p)) {
+                    work.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the best common ancestor of commits ID1 and ID2: of the
+     *  common ancestors that are not ancestors of another common
+     *  ancestor, the one fewest steps away from ID1.  Walks both
+     *  histories newest generation first and stops as soon as everything
+     *  left to visit is already known to be below a common ancestor, so
+     *  the cost depends on how far the two have diverged rather than on
+     *  the length of the history. */
+    String mergeBase(String id1, String id2) {
+        Events.MergeBase event = Events.mergeBase();
+        long[] visited = new long[1];
+        String base = mergeBase(id1, id2, visited);
+        Events.end(event, id1, id2, base, visited[0]);
+        return base;
+    }
+
+    /** Return the merge base of ID1 and ID2 as mergeBase(ID1, ID2) does,
+     *  adding the number of commits visited to VISITED[0]. */
+    private String mergeBase(String id1, String id2, long[] visited) {
+        int a = position(id1), b = position(id2);
+        if (a == NONE || b == NONE) {
+            return null;
+        }
+        if (a == b) {
+            return id1;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<int[]> queue =
+            new PriorityQueue<>((e1, e2) -> newer(e1[0], e2[0]));
+        flags.put(a, LEFT);
+        flags.put(b, RIGHT);
+        queue.add(new int[] {a, LEFT});
+        queue.add(new int[] {b, RIGHT});
+        int active = 2;
+        List<Integer> found = new ArrayList<>();
+        while (active > 0) {
+            int[] entry = queue.poll();
+            int pos = entry[0];
+            if ((entry[1] & STALE) == 0) {
+                active -= 1;
+            }
+            visited[0] += 1;
+            int marks = flags.get(pos);
+            int f = marks & (LEFT | RIGHT | STALE);
+            if (f == (LEFT | RIGHT)) {
+                if ((marks & RESULT) == 0) {
+                    flags.put(pos, marks | RESULT);
+                    found.add(pos);
+                }
+                f |= STALE;
+            }
+            for (int p : new int[] {parent(pos), parent2(pos)}) {
+                int old = flags.getOrDefault(p, 0);
+                if (p != NONE && (old & f) != f) {
+                    flags.put(p, old | f);
+                    queue.add(new int[] {p, old | f});
+                    if (((old | f) & STALE) == 0) {
+                        active += 1;
+                    }
+                }
+            }
+        }
+        List<Integer> best = new ArrayList<>();
+        for (int c : found) {
+            boolean redundant = false;
+            for (int other : found) {
+                if (other != c && isAncestor(id(c), id(other))) {
+                    redundant = true;
+                }
+            }
+            if (!redundant) {
+                best.add(c);
+            }
+        }
+        return id(closest(a, best));
+    }
+
+    /** Record COMMITS, which may be new or already known, appending
+     *  those that are new.  Parents that are not yet in the graph are
+     *  read from the object store and appended as well. */
+    synchronized void add(List<Commit> commits) {
+        if (missing()) {
+            rebuild();
+            return;
+        }
+        boolean known = true;
+        for (Commit c : commits) {
+            known &= find(c.getSha()) != NONE;
+        }
+        if (known) {
+            return;
+        }
+        try (FileChannel channel = lockAdded()) {
+            catchUp(channel);
+            HashMap<String, Node> nodes = new HashMap<>();
+            for (Commit c : commits) {
+                collect(c, nodes, true);
+            }
+            List<Node> order = new ArrayList<>(nodes.values());
+            for (Node n : order) {
+                generation(n, nodes);
+            }
+            order.sort((n1, n2) -> Integer.compare(n1._generation,
+                                                   n2._generation));
+            HashMap<String, Integer> positions = new HashMap<>();
+            int next = _size + _added;
+            for (Node n : order) {
+                positions.put(n._id, next);
+                next += 1;
+            }
+            ByteBuffer records = ByteBuffer.allocate(order.size() * RECORD);
+            for (Node n : order) {
+                put(records, n, positions);
+            }
+            records.flip();
+            long end = ADD_HEADER + (long) _added * RECORD;
+            while (records.hasRemaining()) {
+                end += channel.write(records, end);
+            }
+            absorb(records.array(), 0, records.capacity());
+            _addLength = end;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Merge the appended commits into the table, leaving nothing
+     *  appended. */
+    synchronized void compact() {
+        if (missing()) {
+            rebuild();
+            return;
+        }
+        try (FileChannel channel = lockAdded()) {
+            catchUp(channel);
+            if (_added == 0 && _table != null) {
+                return;
+            }
+            HashMap<String, Node> nodes = new HashMap<>();
+            for (int pos = 0; pos < _size + _added; pos += 1) {
+                Node n = new Node(id(pos), timestamp(pos));
+                n._generation = generation(pos);
+                if (parent(pos) != NONE) {
+                    n._parent = id(parent(pos));
+                }
+                if (parent2(pos) != NONE) {
+                    n._parent2 = id(parent2(pos));
+                }
+                nodes.put(n._id, n);
+            }
+            write(nodes, channel);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrite the graph from the commits now in the store, dropping
+     *  any that have been deleted. */
+    synchronized void rebuild() {
+        HashMap<String, Node> nodes = new HashMap<>();
+        for (String id : _store.commitIDs()) {
+            collect(_store.readCommit(id), nodes, false);
+        }
+        try (FileChannel channel = lockAdded()) {
+            write(nodes, channel);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff there is no graph yet, as in a repository
+     *  written by an older version, so that it must be built from every
+     *  commit in the store before it can be trusted to list them. */
+    private boolean missing() {
+        return table() == null && !_addFile.isFile();
+    }
+
+    /** Add COM and any of its ancestors missing from NODES to NODES,
+     *  leaving out those already in the graph if SKIPKNOWN. */
+    private void collect(Commit com, HashMap<String, Node> nodes,
+                         boolean skipKnown) {
+        ArrayDeque<Commit> work = new ArrayDeque<>();
+        work.push(com);
+        while (!work.isEmpty()) {
+            Commit c = work.pop();
+            if (nodes.containsKey(c.getSha())
+                    || skipKnown && find(c.getSha()) != NONE) {
+                continue;
+            }
+            Node n = new Node(c.getSha(), c.getTimestamp());
+            n._parent = c.getParent();
+            n._parent2 = c.getParent2();
+            nodes.put(n._id, n);
+            for (String p : new String[] {n._parent, n._parent2}) {
+                if (p != null && !nodes.containsKey(p)
+                        && !(skipKnown && find(p) != NONE)) {
+                    work.push(_store.readCommit(p));
+                }
+            }
+        }
+    }
+
+    /** Write NODES, sorted by ID, as a new table with a new stamp, in a
+     *  temporary file that replaces the graph file, then empty the
+     *  file of appended commits, whose lock is held through CHANNEL. */
+    private void write(HashMap<String, Node> nodes, FileChannel channel)
+            throws IOException {
+        List<String> ids = new ArrayList<>(nodes.keySet());
+        Collections.sort(ids);
+        HashMap<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            positions.put(ids.get(i), i);
+        }
+        for (Node n : nodes.values()) {
+            generation(n, nodes);
+        }
+        long stamp = newStamp();
+        File temp = new File(_file.getPath() + ".tmp"
+                + ProcessHandle.current().pid());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            temp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                out.writeLong(stamp);
+                ByteBuffer rec = ByteBuffer.allocate(RECORD);
+                for (String id : ids) {
+                    rec.clear();
+                    put(rec, nodes.get(id), positions);
+                    out.write(rec.array());
+                }
+            }
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw excp;
+        }
+        forget();
+        catchUp(channel);
+    }
+
+    /** Put the record of N into BUF, its parents' positions taken from
+     *  POSITIONS, or else from the graph. */
+    private void put(ByteBuffer buf, Node n,
+                     HashMap<String, Integer> positions) {
+        buf.put(Pack.toBytes(n._id));
+        buf.putInt(positionOf(n._parent, positions));
+        buf.putInt(positionOf(n._parent2, positions));
+        buf.putInt(n._generation);
+        buf.putLong(n._timestamp);
+    }
+
+    /** Return the position of ID in POSITIONS, or else in the graph, or
+     *  NONE if ID is null. */
+    private int positionOf(String id, HashMap<String, Integer> positions) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer pos = positions.get(id);
+        return pos != null ? pos : find(id);
+    }
+
+    /** Return the generation of N, computing it (and that of any of its
+     *  ancestors that lack one) from NODES, or else from the graph. */
+    private int generation(Node n, HashMap<String, Node> nodes) {
+        ArrayDeque<Node> work = new ArrayDeque<>();
+        work.push(n);
+        while (!work.isEmpty()) {
+            Node top = work.peek();
+            if (top._generation > 0) {
+                work.pop();
+                continue;
+            }
+            int gen = 1;
+            boolean ready = true;
+            for (String p : new String[] {top._parent, top._parent2}) {
+                if (p == null) {
+                    continue;
+                }
+                Node parent = nodes.get(p);
+                if (parent == null) {
+                    gen = Math.max(gen, generation(find(p)) + 1);
+                } else if (parent._generation == 0) {
+                    work.push(parent);
+                    ready = false;
+                } else {
+                    gen = Math.max(gen, parent._generation + 1);
+                }
+            }
+            if (ready) {
+                top._generation = gen;
+                work.pop();
+            }
+        }
+        return n._generation;
+    }
+
+    /** Return the one of CANDIDATES fewest parent steps from START. */
+    private int closest(int start, List<Integer> candidates) {
+        int floor = Integer.MAX_VALUE;
+        for (int c : candidates) {
+            floor = Math.min(floor, generation(c));
+        }
+        HashMap<Integer, Integer> dist = new HashMap<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        dist.put(start, 0);
+        work.add(start);
+        while (!work.isEmpty()) {
+            int pos = work.poll();
+            for (int p : new int[] {parent(pos), parent2(pos)}) {
+                if (p != NONE && generation(p) >= floor
+                        && !dist.containsKey(p)) {
+                    dist.put(p, dist.get(pos) + 1);
+                    work.add(p);
+                }
+            }
+        }
+        int result = candidates.get(0);
+        for (int c : candidates) {
+            if (dist.containsKey(c) && (!dist.containsKey(result)
+                    || dist.get(c) < dist.get(result))) {
+                result = c;
+            }
+        }
+        return result;
+    }
+
+    /** Order positions P1 and P2 so that higher generations, then later
+     *  timestamps, come first. */
+    private int newer(int p1, int p2) {
+        int c = Integer.compare(generation(p2), generation(p1));
+        return c != 0 ? c : Long.compare(timestamp(p2), timestamp(p1));
+    }
+
+    /** Return the position of ID in the graph, or NONE. */
+    private int find(String id) {
+        if (id == null || !Pack.isID(id)) {
+            return NONE;
+        }
+        load();
+        if (_table != null) {
+            byte[] key = Pack.toBytes(id);
+            int lo = 0, hi = _size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = Pack.compare(_table, record(mid), key);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+        }
+        Integer pos = _addedIDs.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /** Return the buffer holding the record at POS. */
+    private ByteBuffer records(int pos) {
+        return pos < _size ? _table : _addRecords;
+    }
+
+    /** Return the offset of the record at POS in records(POS). */
+    private int record(int pos) {
+        return pos < _size ? HEADER + pos * RECORD : (pos - _size) * RECORD;
+    }
+
+    /** Map the table and read the appended commits, unless done. */
+    private void load() {
+        table();
+        if (_addBytes == null) {
+            readAdded();
+        }
+    }
+
+    /** Forget the table and the appended commits. */
+    private void forget() {
+        _loaded = false;
+        _table = null;
+        _size = 0;
+        _addBytes = null;
+    }
+
+    /** Return the mapped table, mapping it if needed, or null if there
+     *  is no graph file yet, or only one of an older layout, which is
+     *  ignored until the graph is next merged. */
+    private MappedByteBuffer table() {
+        if (!_loaded) {
+            _loaded = true;
+            _table = null;
+            _size = 0;
+            if (!_file.isFile()) {
+                return null;
+            }
+            MappedByteBuffer table;
+            _mapped = _file.lastModified();
+            try (RandomAccessFile raf = new RandomAccessFile(_file, "r")) {
+                FileChannel channel = raf.getChannel();
+                table = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (table.capacity() < 8 || table.getInt(0) != MAGIC) {
+                throw Utils.error("Corrupt commit graph.");
+            }
+            if (table.getInt(4) == VERSION) {
+                _table = table;
+                _size = table.getInt(8);
+                _stamp = table.getLong(12);
+            }
+        }
+        return _table;
+    }
+
+    /** Return the stamp of the table now in the graph file, or 0 if
+     *  there is none. */
+    private long fileStamp() {
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r")) {
+            if (raf.length() < HEADER) {
+                return 0;
+            }
+            raf.seek(12);
+            return raf.readLong();
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the stamp of the mapped table, or 0 if there is none. */
+    private long stamp() {
+        return _table == null ? 0 : _stamp;
+    }
+
+    /** Return a new stamp, never 0. */
+    private static long newStamp() {
+        return ThreadLocalRandom.current().nextLong() | 1;
+    }
+
+    /** Return a channel on the file of appended commits, creating it if
+     *  needed, holding a lock on the file that closing it releases. */
+    private FileChannel lockAdded() throws IOException {
+        FileChannel channel = FileChannel.open(_addFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException excp) {
+            channel.close();
+            throw excp;
+        }
+        return channel;
+    }
+
+    /** Return true iff HEADER is a header of the file of appended
+     *  commits belonging to the mapped table. */
+    private boolean belongs(ByteBuffer header) {
+        return header.limit() >= ADD_HEADER
+            && header.getInt(0) == ADD_MAGIC && header.getInt(4) == VERSION
+            && header.getLong(8) == stamp();
+    }
+
+    /** Read the appended commits that belong to the mapped table. */
+    private void readAdded() {
+        clearAdded();
+        byte[] bytes;
+        try {
+            bytes = _addFile.isFile() ? Files.readAllBytes(_addFile.toPath())
+                : new byte[0];
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _addLength = bytes.length;
+        if (belongs(ByteBuffer.wrap(bytes))) {
+            absorb(bytes, ADD_HEADER, bytes.length);
+        }
+    }
+
+    /** Forget the appended commits. */
+    private void clearAdded() {
+        _addBytes = new byte[0];
+        _addRecords = ByteBuffer.wrap(_addBytes);
+        _added = 0;
+        _addedIDs = new HashMap<>();
+    }
+
+    /** Bring the table and the appended commits up to date with the
+     *  files, whose lock is held through CHANNEL, the file of appended
+     *  commits: remap a table that has been replaced, start the file
+     *  afresh if it belongs to another table, read the records other
+     *  processes have appended, and drop any cut short. */
+    private void catchUp(FileChannel channel) throws IOException {
+        if (_loaded && fileStamp() != stamp()) {
+            forget();
+        }
+        load();
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(ADD_HEADER);
+        while (header.hasRemaining()
+               && channel.read(header, header.position()) > 0) {
+            continue;
+        }
+        header.flip();
+        if (!belongs(header)) {
+            channel.truncate(0);
+            header.clear();
+            header.putInt(ADD_MAGIC).putInt(VERSION).putLong(stamp());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            clearAdded();
+            _addLength = ADD_HEADER;
+            return;
+        }
+        long known = ADD_HEADER + (long) _added * RECORD;
+        if (length < known) {
+            clearAdded();
+            known = ADD_HEADER;
+        }
+        ByteBuffer rest = ByteBuffer.allocate((int) (length - known));
+        while (rest.hasRemaining()
+               && channel.read(rest, known + rest.position()) > 0) {
+            continue;
+        }
+        int used = absorb(rest.array(), 0, rest.position());
+        if (known + used < length) {
+            channel.truncate(known + used);
+        }
+        _addLength = channel.size();
+    }
+
+    /** Append the whole, well-formed records in BYTES from FROM to TO to
+     *  the appended commits, stopping at the first that is not, and
+     *  return the number of bytes taken. */
+    private int absorb(byte[] bytes, int from, int to) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int off = from;
+        for (; off + RECORD <= to; off += RECORD) {
+            int pos = _size + _added;
+            int p1 = buf.getInt(off + ID_BYTES);
+            int p2 = buf.getInt(off + ID_BYTES + 4);
+            if (buf.getInt(off + ID_BYTES + 8) <= 0 || p1 < NONE
+                    || p1 >= pos || p2 < NONE || p2 >= pos) {
+                break;
+            }
+            if ((_added + 1) * RECORD > _addBytes.length) {
+                _addBytes = Arrays.copyOf(_addBytes,
+                        Math.max(2 * _addBytes.length, 64 * RECORD));
+            }
+            System.arraycopy(bytes, off, _addBytes, _added * RECORD, RECORD);
+            _addedIDs.put(Pack.toHex(buf, off), pos);
+            _added += 1;
+        }
+        _addRecords = ByteBuffer.wrap(_addBytes);
+        return off - from;
+    }
+
+    /** A commit being written to the graph. */
+    private static class Node {
+        /** Commit ID with timestamp TIMESTAMP. */
+        Node(String id, long timestamp) {
+            _id = id;
+            _timestamp = timestamp;
+        }
+
+        /** The commit ID. */
+        private final String _id;
+        /** The commit's timestamp. */
+        private final long _timestamp;
+        /** The first parent's ID, or null. */
+        private String _parent;
+        /** The second parent's ID, or null. */
+        private String _parent2;
+        /** The generation number, or 0 if not yet known. */
+        private int _generation;
+    }
+
+    /** Flag for commits reached from the first commit of a merge base
+     *  query. */
+    private static final int LEFT = 1;
+
+    /** Flag for commits reached from the second commit. */
+    private static final int RIGHT = 2;
+
+    /** Flag for commits below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Flag for common ancestors found. */
+    private static final int RESULT = 8;
+
+    /** Magic number at the start of the file ("CGPH"). */
+    private static final int MAGIC = 0x43475048;
+
+    /** Magic number at the start of the file of appended commits
+     *  ("CGAD"). */
+    private static final int ADD_MAGIC = 0x43474144;
+
+    /** Version of the layout of both files.  Version 2 added the
+     *  stamp. */
+    private static final int VERSION = 2;
+
+    /** Bytes in the header: magic, version, commit count and stamp. */
+    private static final int HEADER = 20;
+
+    /** Bytes in the header of the file of appended commits: magic,
+     *  version and the stamp of the table it extends. */
+    private static final int ADD_HEADER = 16;
+
+    /** Bytes in a raw commit ID. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes in a record: ID, two parents, generation and timestamp. */
+    private static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** The graph file. */
+    private final File _file;
+
+    /** The file of appended commits. */
+    private final File _addFile;
+
+    /** The object store holding the commits. */
+    private final ObjectStore _store;
+
+    /** True iff the graph file has been mapped, or found missing. */
+    private boolean _loaded;
+
+    /** The mapped graph file, or null if there is none. */
+    private MappedByteBuffer _table;
+
+    /** Number of commits in the mapped file. */
+    private int _size;
+
+    /** Modification time of the graph file when it was mapped. */
+    private long _mapped;
+
+    /** The stamp of the mapped table. */
+    private long _stamp;
+
+    /** The records of the appended commits, or null until read. */
+    private byte[] _addBytes;
+
+    /** _addBytes, as a buffer. */
+    private ByteBuffer _addRecords;
+
+    /** Number of appended commits. */
+    private int _added;
+
+    /** Positions of the appended commits by id. */
+    private HashMap<String, Integer> _addedIDs;
+
+    /** Length of the file of appended commits when last read. */
+    private long _addLength;
+}
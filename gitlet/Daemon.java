@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A long-lived process that runs gitlet commands for gitlet.Client, so
+ *  that a command does not pay for starting a JVM, loading classes and
+ *  reading the commit graph, message index and packs again.  It listens
+ *  on the Unix-domain socket .gitlet/daemon.sock.
+ *
+ *  A client sends the command's arguments, each followed by a NUL byte,
+ *  and shuts down its side of the connection; the daemon then writes
+ *  back everything the command prints and closes the connection.
+ *  Commands are run one at a time, in the order they arrive, so they
+ *  see each other's effects just as separate processes would.  Before
+ *  each command, caches of files that another process may have changed
+ *  are checked and dropped if stale.
+ *  @author Jinho Shin
+ */
+class Daemon {
+
+    /** Name of the socket in the .gitlet directory. */
+    static final String SOCKET = "daemon.sock";
+
+    /** The argument that, after "daemon", asks a running daemon to
+     *  stop. */
+    static final String STOP = "--stop";
+
+    /** A daemon running commands against G, whose .gitlet directory is
+     *  GITLET. */
+    Daemon(Gitlet g, File gitlet) {
+        _gitlet = g;
+        _socket = new File(gitlet, SOCKET);
+    }
+
+    /** Serve commands until asked to stop. */
+    void serve() throws IOException {
+        if (_socket.exists()) {
+            SocketChannel running = Client.connect(_socket);
+            if (running != null) {
+                running.close();
+                throw Utils.error("A gitlet daemon is already running.");
+            }
+            _socket.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(_socket.toPath()));
+            while (!_stopped) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(_socket.toPath());
+        }
+    }
+
+    /** Read one command from CLIENT, run it and send back its output. */
+    private void handle(SocketChannel client) throws IOException {
+        String[] args = readArgs(Channels.newInputStream(client)
+                .readAllBytes());
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)), false,
+                StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (IOException | ParseException | RuntimeException excp) {
+            excp.printStackTrace();
+            System.out.println("Internal error: " + excp);
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+    }
+
+    /** Run the command ARGS, handling requests to the daemon itself. */
+    private void run(String[] args) throws IOException, ParseException {
+        String[] command = Main.command(args);
+        if (command.length > 0 && command[0].equals("daemon")) {
+            if (command.length == 2 && command[1].equals(STOP)) {
+                _stopped = true;
+                System.out.println("Gitlet daemon stopped.");
+            } else {
+                System.out.println("A gitlet daemon is already running.");
+            }
+            return;
+        }
+        if (command.length == 1 && command[0].equals("batch")) {
+            throw Utils.error("A gitlet daemon cannot read a batch from "
+                    + "standard input.");
+        }
+        Main.run(_gitlet, args);
+    }
+
+    /** Return the NUL-terminated arguments in REQUEST. */
+    static String[] readArgs(byte[] request) {
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i += 1) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Return the request carrying ARGS. */
+    static byte[] writeArgs(String[] args) {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        for (String arg : args) {
+            request.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+            request.write(0);
+        }
+        return request.toByteArray();
+    }
+
+    /** The repository commands are run against. */
+    private final Gitlet _gitlet;
+
+    /** The socket file. */
+    private final File _socket;
+
+    /** True once asked to stop. */
+    private boolean _stopped;
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Binary deltas between two versions of a file.  A delta starts with
+ *  the lengths of the base and of the result, followed by instructions
+ *  that build the result from left to right: COPY takes a run of bytes
+ *  from the base, INSERT carries bytes of its own.  Counts and offsets
+ *  are written as Codec counts.
+ *
+ *  Deltas are found by indexing the base in blocks of BLOCK bytes by a
+ *  rolling hash, sliding a window of the same size over the result, and
+ *  extending each matching block as far as it goes in both directions.
+ *  @author Jinho Shin
+ */
+class Delta {
+
+    /** Instruction copying bytes from the base. */
+    static final int COPY = 1;
+
+    /** Instruction carrying literal bytes. */
+    static final int INSERT = 2;
+
+    /** Size of the blocks matched between base and result. */
+    static final int BLOCK = 16;
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Codec.writeCount(out, base.length);
+            Codec.writeCount(out, target.length);
+            int[] table = index(base);
+            int pending = 0;
+            int i = 0;
+            int h = target.length >= BLOCK ? hash(target, 0) : 0;
+            while (i + BLOCK <= target.length) {
+                int b = table.length == 0 ? -1 : table[slot(h, table)] - 1;
+                if (b >= 0 && Arrays.equals(base, b, b + BLOCK,
+                                            target, i, i + BLOCK)) {
+                    int start = i;
+                    while (b > 0 && start > pending
+                           && base[b - 1] == target[start - 1]) {
+                        b -= 1;
+                        start -= 1;
+                    }
+                    int len = i - start + BLOCK;
+                    while (b + len < base.length
+                           && start + len < target.length
+                           && base[b + len] == target[start + len]) {
+                        len += 1;
+                    }
+                    insert(out, target, pending, start);
+                    out.writeByte(COPY);
+                    Codec.writeCount(out, b);
+                    Codec.writeCount(out, len);
+                    i = pending = start + len;
+                    if (i + BLOCK <= target.length) {
+                        h = hash(target, i);
+                    }
+                } else {
+                    if (i + BLOCK < target.length) {
+                        h = (h - target[i] * POWER) * PRIME
+                            + target[i + BLOCK];
+                    }
+                    i += 1;
+                }
+            }
+            insert(out, target, pending, target.length);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(delta));
+            if (Codec.readCount(in) != base.length) {
+                throw new IllegalArgumentException("delta base mismatch");
+            }
+            byte[] result = new byte[Codec.readCount(in)];
+            int pos = 0;
+            for (int op = in.read(); op >= 0; op = in.read()) {
+                if (op == COPY) {
+                    int offset = Codec.readCount(in);
+                    int len = Codec.readCount(in);
+                    System.arraycopy(base, offset, result, pos, len);
+                    pos += len;
+                } else if (op == INSERT) {
+                    int len = Codec.readCount(in);
+                    in.readFully(result, pos, len);
+                    pos += len;
+                } else {
+                    throw new IllegalArgumentException("corrupt delta");
+                }
+            }
+            if (pos != result.length) {
+                throw new IllegalArgumentException("truncated delta");
+            }
+            return result;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+    }
+
+    /** Write an INSERT of TARGET[FROM..TO) to OUT, if it is not empty. */
+    private static void insert(DataOutputStream out, byte[] target,
+                               int from, int to) throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            Codec.writeCount(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return a hash table from the hashes of the aligned blocks of BASE
+     *  to one more than their offsets, with 0 for an empty slot. */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        if (blocks == 0) {
+            return new int[0];
+        }
+        int[] table = new int[Integer.highestOneBit(blocks * 2 - 1) << 1];
+        for (int b = (blocks - 1) * BLOCK; b >= 0; b -= BLOCK) {
+            table[slot(hash(base, b), table)] = b + 1;
+        }
+        return table;
+    }
+
+    /** Return the slot of hash H in TABLE, whose length is a power of
+     *  two no smaller than 2. */
+    private static int slot(int h, int[] table) {
+        return (h * 0x9e3779b9) >>> Integer.numberOfLeadingZeros(
+                table.length - 1);
+    }
+
+    /** Return the rolling hash of the block of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 0x01000193;
+
+    /** PRIME to the power BLOCK - 1, the weight of a block's first
+     *  byte. */
+    private static final int POWER;
+
+    static {
+        int p = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            p *= PRIME;
+        }
+        POWER = p;
+    }
+}
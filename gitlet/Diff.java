@@ -0,0 +1,559 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** The differences between two versions of a file, as a shortest edit
+ *  script over their lines.  Lines are compared as bytes, each including
+ *  its line terminator, and are first numbered so that the diff itself
+ *  compares ints.  The contents are held in ByteBuffers, which may map
+ *  files, so that only the offsets and numbers of the lines need be
+ *  kept in memory.
+ *
+ *  The script is found with Myers' O(ND) algorithm.  Small problems are
+ *  solved directly, remembering each round's furthest reaching paths to
+ *  trace the script back; larger ones are split at the middle snake,
+ *  found by searching from both ends at once, so that memory stays
+ *  linear in the size of the input however many edits there are.
+ *  Common leading and trailing lines are stripped at every level.
+ *  @author Jinho Shin
+ */
+class Diff {
+
+    /** Lines of context around each hunk of a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** The differences between the lines of A and of B. */
+    Diff(Lines a, Lines b) {
+        HashMap<Line, Integer> numbers = new HashMap<>();
+        _x = number(a, numbers);
+        _y = number(b, numbers);
+        _deleted = new boolean[_x.length];
+        _inserted = new boolean[_y.length];
+        int max = _x.length + _y.length + 2;
+        _forward = new int[2 * max + 1];
+        _backward = new int[2 * max + 1];
+        compare(0, _x.length, 0, _y.length);
+        _forward = _backward = null;
+    }
+
+    /** Return the changed regions, in order, each as {A0, A1, B0, B1}:
+     *  lines A0 up to A1 of A are replaced by lines B0 up to B1 of B. */
+    List<int[]> changes() {
+        List<int[]> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _x.length || j < _y.length) {
+            if (i < _x.length && j < _y.length
+                && !_deleted[i] && !_inserted[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < _x.length && _deleted[i]) {
+                i += 1;
+            }
+            while (j < _y.length && _inserted[j]) {
+                j += 1;
+            }
+            result.add(new int[] {i0, i, j0, j});
+        }
+        return result;
+    }
+
+    /** Write a unified diff of file NAME from contents A to contents B
+     *  to OUT.  A or B is null if the file is absent on that side. */
+    static void unified(String name, ByteBuffer a, ByteBuffer b,
+                        OutputStream out) throws IOException {
+        write(out, "diff --gitlet a/" + name + " b/" + name + "\n");
+        if (isBinary(a) || isBinary(b)) {
+            write(out, "Binary files "
+                  + (a == null ? "/dev/null" : "a/" + name)
+                  + " and " + (b == null ? "/dev/null" : "b/" + name)
+                  + " differ\n");
+            return;
+        }
+        write(out, "--- " + (a == null ? "/dev/null" : "a/" + name) + "\n");
+        write(out, "+++ " + (b == null ? "/dev/null" : "b/" + name) + "\n");
+        Lines la = lines(a), lb = lines(b);
+        List<int[]> changes = new Diff(la, lb).changes();
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size()
+                   && changes.get(last + 1)[0] - changes.get(last)[1]
+                       <= 2 * CONTEXT) {
+                last += 1;
+            }
+            hunk(la, lb, changes.subList(first, last + 1), out);
+            first = last + 1;
+        }
+    }
+
+    /** Write to OUT the three-way merge of OURS and THEIRS, two versions
+     *  of BASE, any of which is null if the file is absent there.  A
+     *  change made on only one side, or alike on both, is taken as it is;
+     *  changes of the two sides that overlap or touch are written between
+     *  conflict markers, ours first.  Changes touch when one ends where
+     *  the other starts, as edits to adjacent lines do: there is then no
+     *  unchanged line between them to tell in what order they belong, so
+     *  they conflict, as they do in git.  Binary files conflict as a
+     *  whole.
+     *  Return true iff there was a conflict. */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        Lines o = lines(wrap(base)), a = lines(wrap(ours));
+        Lines b = lines(wrap(theirs));
+        if (isBinary(o.bytes()) || isBinary(a.bytes())
+            || isBinary(b.bytes())) {
+            conflict(a, 0, a.size(), b, 0, b.size(), out);
+            return true;
+        }
+        List<int[]> ca = new Diff(o, a).changes();
+        List<int[]> cb = new Diff(o, b).changes();
+        boolean conflicted = false;
+        int i = 0, j = 0, shiftA = 0, shiftB = 0, copied = 0;
+        while (i < ca.size() || j < cb.size()) {
+            int lo = Math.min(i < ca.size() ? ca.get(i)[0] : o.size(),
+                              j < cb.size() ? cb.get(j)[0] : o.size());
+            int hi = lo, i0 = i, j0 = j;
+            int a0 = lo + shiftA, b0 = lo + shiftB;
+            for (boolean grew = true; grew;) {
+                grew = false;
+                if (i < ca.size() && ca.get(i)[0] <= hi) {
+                    int[] c = ca.get(i);
+                    hi = Math.max(hi, c[1]);
+                    shiftA += (c[3] - c[2]) - (c[1] - c[0]);
+                    i += 1;
+                    grew = true;
+                }
+                if (j < cb.size() && cb.get(j)[0] <= hi) {
+                    int[] c = cb.get(j);
+                    hi = Math.max(hi, c[1]);
+                    shiftB += (c[3] - c[2]) - (c[1] - c[0]);
+                    j += 1;
+                    grew = true;
+                }
+            }
+            int a1 = hi + shiftA, b1 = hi + shiftB;
+            copy(o, copied, lo, out);
+            if (j == j0) {
+                copy(a, a0, a1, out);
+            } else if (i == i0 || same(a, a0, a1, b, b0, b1)) {
+                copy(b, b0, b1, out);
+            } else {
+                conflict(a, a0, a1, b, b0, b1, out);
+                conflicted = true;
+            }
+            copied = hi;
+        }
+        copy(o, copied, o.size(), out);
+        return conflicted;
+    }
+
+    /** Return CONTENTS as a buffer, or null if null. */
+    private static ByteBuffer wrap(byte[] contents) {
+        return contents == null ? null : ByteBuffer.wrap(contents);
+    }
+
+    /** Return the lines of CONTENTS, which are empty if null. */
+    private static Lines lines(ByteBuffer contents) {
+        return new Lines(contents == null ? ByteBuffer.allocate(0)
+                         : contents);
+    }
+
+    /** Write lines FROM up to TO of LINES to OUT. */
+    private static void copy(Lines lines, int from, int to,
+                             OutputStream out) throws IOException {
+        write(out, lines.bytes(), lines.start(from), lines.start(to));
+    }
+
+    /** Return true iff lines A0 up to A1 of A have the same bytes as
+     *  lines B0 up to B1 of B. */
+    private static boolean same(Lines a, int a0, int a1,
+                                Lines b, int b0, int b1) {
+        return a.range(a.start(a0), a.start(a1))
+            .equals(b.range(b.start(b0), b.start(b1)));
+    }
+
+    /** Write lines A0 up to A1 of A and B0 up to B1 of B to OUT as a
+     *  conflict. */
+    private static void conflict(Lines a, int a0, int a1,
+                                 Lines b, int b0, int b1, OutputStream out)
+            throws IOException {
+        write(out, "<<<<<<< HEAD\n");
+        copy(a, a0, a1, out);
+        write(out, "=======\n");
+        copy(b, b0, b1, out);
+        write(out, ">>>>>>>\n");
+    }
+
+    /** Write the hunk made of CHANGES between A and B, with its
+     *  context, to OUT. */
+    private static void hunk(Lines a, Lines b, List<int[]> changes,
+                             OutputStream out) throws IOException {
+        int[] head = changes.get(0), tail = changes.get(changes.size() - 1);
+        int before = Math.min(CONTEXT, head[0]);
+        int after = Math.min(CONTEXT, a.size() - tail[1]);
+        int a0 = head[0] - before, a1 = tail[1] + after;
+        int b0 = head[2] - before, b1 = tail[3] + after;
+        write(out, "@@ -" + range(a0, a1) + " +" + range(b0, b1) + " @@\n");
+        int i = a0;
+        for (int[] c : changes) {
+            for (; i < c[0]; i += 1) {
+                line(' ', a, i, out);
+            }
+            for (; i < c[1]; i += 1) {
+                line('-', a, i, out);
+            }
+            for (int j = c[2]; j < c[3]; j += 1) {
+                line('+', b, j, out);
+            }
+        }
+        for (; i < a1; i += 1) {
+            line(' ', a, i, out);
+        }
+    }
+
+    /** Return the hunk header range for lines FROM up to TO. */
+    private static String range(int from, int to) {
+        int count = to - from;
+        if (count == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (count == 0 ? from : from + 1) + "," + count;
+    }
+
+    /** Write line I of LINES to OUT, after MARK. */
+    private static void line(char mark, Lines lines, int i,
+                             OutputStream out) throws IOException {
+        out.write(mark);
+        int start = lines.start(i), end = lines.end(i);
+        write(out, lines.bytes(), start, end);
+        if (end == start || lines.bytes().get(end - 1) != '\n') {
+            write(out, "\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** Write S to OUT. */
+    private static void write(OutputStream out, String s)
+            throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write bytes FROM up to TO of BYTES to OUT, a block at a time if
+     *  they are not in an array. */
+    private static void write(OutputStream out, ByteBuffer bytes,
+                              int from, int to) throws IOException {
+        if (bytes.hasArray()) {
+            out.write(bytes.array(), bytes.arrayOffset() + from, to - from);
+            return;
+        }
+        byte[] block = new byte[Math.min(to - from, Utils.BUFFER_SIZE)];
+        for (int at = from; at < to; at += block.length) {
+            int n = Math.min(block.length, to - at);
+            bytes.get(at, block, 0, n);
+            out.write(block, 0, n);
+        }
+    }
+
+    /** Return true iff CONTENTS, which may be null, look binary: there
+     *  is a NUL among the first BINARY_PROBE bytes. */
+    static boolean isBinary(ByteBuffer contents) {
+        if (contents == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(contents.limit(), BINARY_PROBE);
+             i += 1) {
+            if (contents.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Mark the edits turning _x[A0..A1) into _y[B0..B1). */
+    private void compare(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _x[a0] == _y[b0]) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _x[a1 - 1] == _y[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1) {
+            Arrays.fill(_inserted, b0, b1, true);
+        } else if (b0 == b1) {
+            Arrays.fill(_deleted, a0, a1, true);
+        } else if ((a1 - a0) + (b1 - b0) <= SMALL) {
+            greedy(a0, a1, b0, b1);
+        } else {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            compare(a0, snake[0], b0, snake[1]);
+            compare(snake[2], a1, snake[3], b1);
+        }
+    }
+
+    /** Mark the edits turning _x[A0..A1) into _y[B0..B1) by the basic
+     *  greedy algorithm, keeping every round's furthest reaching paths
+     *  and tracing the shortest script back through them. */
+    private void greedy(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0, mid = n + m + 1;
+        int[] v = new int[2 * mid + 1];
+        List<int[]> trace = new ArrayList<>();
+        int d;
+        search:
+        for (d = 0;; d += 1) {
+            trace.add(Arrays.copyOfRange(v, mid - d - 1, mid + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[mid + k - 1] < v[mid + k + 1])) {
+                    x = v[mid + k + 1];
+                } else {
+                    x = v[mid + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && _x[a0 + x] == _y[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[mid + k] = x;
+                if (x >= n && y >= m) {
+                    break search;
+                }
+            }
+        }
+        int x = n, y = m;
+        for (; d > 0; d -= 1) {
+            int[] prev = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d
+                || (k != d && at(prev, d, k - 1) < at(prev, d, k + 1))) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = at(prev, d, prevK), prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+            }
+            if (x == prevX) {
+                _inserted[b0 + y - 1] = true;
+                y -= 1;
+            } else {
+                _deleted[a0 + x - 1] = true;
+                x -= 1;
+            }
+        }
+    }
+
+    /** Return the furthest x on diagonal K in SLICE, the paths saved at
+     *  the start of round D. */
+    private static int at(int[] slice, int d, int k) {
+        return slice[k + d + 1];
+    }
+
+    /** Return the middle snake of an optimal path turning _x[A0..A1)
+     *  into _y[B0..B1), as {X0, Y0, X1, Y1}: it runs from (X0, Y0) to
+     *  (X1, Y1), and the rest of the path can be found on either side of
+     *  it.  Both ends have been stripped of common lines. */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int mid = _forward.length / 2;
+        _forward[mid + 1] = 0;
+        _backward[mid + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && _forward[mid + k - 1] < _forward[mid + k + 1])) {
+                    x = _forward[mid + k + 1];
+                } else {
+                    x = _forward[mid + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && _x[a0 + x] == _y[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                _forward[mid + k] = x;
+                if (odd && delta - k >= -(d - 1) && delta - k <= d - 1
+                    && x + _backward[mid + delta - k] >= n) {
+                    return new int[] {a0 + x0, b0 + y0, a0 + x, b0 + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && _backward[mid + k - 1] < _backward[mid + k + 1])) {
+                    x = _backward[mid + k + 1];
+                } else {
+                    x = _backward[mid + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _x[a1 - 1 - x] == _y[b1 - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                _backward[mid + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + _forward[mid + delta - k] >= n) {
+                    return new int[] {a1 - x, b1 - y, a1 - x0, b1 - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return the numbers of the lines of LINES, numbering lines not yet
+     *  in NUMBERS after those that are. */
+    private static int[] number(Lines lines, HashMap<Line, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Line line = new Line(lines, i);
+            Integer n = numbers.get(line);
+            if (n == null) {
+                n = numbers.size();
+                numbers.put(line, n);
+            }
+            result[i] = n;
+        }
+        return result;
+    }
+
+    /** The contents of a file, divided into lines. */
+    static class Lines {
+        /** The lines of CONTENTS, from 0 up to its limit. */
+        Lines(ByteBuffer contents) {
+            _bytes = contents;
+            int length = contents.limit();
+            int count = 0;
+            for (int i = 0; i < length; i += 1) {
+                if (contents.get(i) == '\n') {
+                    count += 1;
+                }
+            }
+            boolean partial = length > 0
+                && contents.get(length - 1) != '\n';
+            _starts = new int[count + (partial ? 1 : 0) + 1];
+            int line = 1;
+            for (int i = 0; i < length; i += 1) {
+                if (contents.get(i) == '\n') {
+                    _starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            _starts[_starts.length - 1] = length;
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return _starts.length - 1;
+        }
+
+        /** Return the offset of line I. */
+        int start(int i) {
+            return _starts[i];
+        }
+
+        /** Return the offset just past line I, including its
+         *  terminator. */
+        int end(int i) {
+            return _starts[i + 1];
+        }
+
+        /** Return the contents. */
+        ByteBuffer bytes() {
+            return _bytes;
+        }
+
+        /** Return bytes FROM up to TO of the contents. */
+        ByteBuffer range(int from, int to) {
+            return _bytes.slice(from, to - from);
+        }
+
+        /** The contents. */
+        private final ByteBuffer _bytes;
+        /** The offset of each line, followed by the length. */
+        private final int[] _starts;
+    }
+
+    /** One line of a Lines, compared by its bytes. */
+    private static class Line {
+        /** Line I of LINES. */
+        Line(Lines lines, int i) {
+            _lines = lines;
+            _start = lines.start(i);
+            _end = lines.end(i);
+            ByteBuffer bytes = lines.bytes();
+            int h = 0;
+            for (int j = _start; j < _end; j += 1) {
+                h = 31 * h + bytes.get(j);
+            }
+            _hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                && _lines.range(_start, _end)
+                   .equals(other._lines.range(other._start, other._end));
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The lines holding the line. */
+        private final Lines _lines;
+        /** The offset of the line. */
+        private final int _start;
+        /** The offset just past the line. */
+        private final int _end;
+        /** The hash of the line's bytes. */
+        private final int _hash;
+    }
+
+    /** Largest problem, in lines of both sides, solved by the greedy
+     *  algorithm rather than split at its middle snake. */
+    private static final int SMALL = 256;
+
+    /** Number of leading bytes searched for a NUL to detect binary
+     *  files. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Line numbers of the first version. */
+    private final int[] _x;
+
+    /** Line numbers of the second version. */
+    private final int[] _y;
+
+    /** Which lines of the first version are deleted. */
+    private final boolean[] _deleted;
+
+    /** Which lines of the second version are inserted. */
+    private final boolean[] _inserted;
+
+    /** Furthest reaching forward paths by diagonal, during the diff. */
+    private int[] _forward;
+
+    /** Furthest reaching backward paths by diagonal, during the diff. */
+    private int[] _backward;
+}
@@ -0,0 +1,342 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/** The Java Flight Recorder events of gitlet, so that a recording of a
+ *  daemon or a batch shows which objects and refs each stretch of time
+ *  went to.  Each event is timed from a call of begin() to a call of
+ *  commit(), and carries the id of the object concerned: the id and size
+ *  of a commit or blob read or written by the ObjectStore, the old and
+ *  new ids of a branch pointed at a new commit, and the ids of two
+ *  commits and their merge base found by the CommitGraph, with the
+ *  number of commits visited to find it.  Commits found in the store's
+ *  cache are not read, and blobs already present are not written, so
+ *  neither gives an event.
+ *
+ *  Events are only created once the flight recorder has been started,
+ *  since creating the first one starts up much of the recorder, which
+ *  takes longer than most commands.  The methods of this class begin
+ *  an event only then, returning null otherwise, and end an event only
+ *  if it is not null, so call sites need not check.  Record the events
+ *  with, for example,
+ *    java -XX:StartFlightRecording=filename=gitlet.jfr gitlet.Main daemon
+ *  and list them with "jfr print --categories Gitlet gitlet.jfr".  The
+ *  option --events before a command records just that command and
+ *  prints its events to the standard error when it finishes, one per
+ *  line in the order they began: the event's name, then each of its
+ *  fields as NAME=VALUE.
+ *  @author Jinho Shin
+ */
+class Events {
+
+    /** The option that asks for the events of a command. */
+    static final String OPTION = "--events";
+
+    /** Not instantiated. */
+    private Events() {
+    }
+
+    /** Return a recording of the events of gitlet, and of nothing else,
+     *  started. */
+    static Recording record() {
+        Recording recording = new Recording();
+        for (Class<? extends Event> type : TYPES) {
+            recording.enable(type).withThreshold(Duration.ZERO);
+        }
+        recording.start();
+        return recording;
+    }
+
+    /** Stop RECORDING, print its events to OUT and discard it. */
+    static void report(Recording recording, PrintStream out)
+        throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("gitlet", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            events.sort(Comparator.comparing(RecordedEvent::getStartTime));
+            for (RecordedEvent event : events) {
+                StringBuilder line =
+                    new StringBuilder(event.getEventType().getName());
+                for (ValueDescriptor field : event.getFields()) {
+                    if (!STANDARD_FIELDS.contains(field.getName())) {
+                        line.append(' ').append(field.getName()).append('=')
+                            .append((Object) event.getValue(field.getName()));
+                    }
+                }
+                out.println(line);
+            }
+        } finally {
+            recording.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Return true iff the flight recorder has been started in this
+     *  process, at startup or since, and may be recording. */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Return a CommitRead event, begun, or null if not recording. */
+    static CommitRead commitRead() {
+        if (!recording()) {
+            return null;
+        }
+        CommitRead event = new CommitRead();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the read of commit ID of SIZE
+     *  bytes. */
+    static void end(CommitRead event, String id, long size) {
+        if (event != null && event.shouldCommit()) {
+            event.id = id;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /** Return a CommitWrite event, begun, or null if not recording. */
+    static CommitWrite commitWrite() {
+        if (!recording()) {
+            return null;
+        }
+        CommitWrite event = new CommitWrite();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the write of commit ID of SIZE
+     *  bytes. */
+    static void end(CommitWrite event, String id, long size) {
+        if (event != null && event.shouldCommit()) {
+            event.id = id;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /** Return a BlobRead event, begun, or null if not recording. */
+    static BlobRead blobRead() {
+        if (!recording()) {
+            return null;
+        }
+        BlobRead event = new BlobRead();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the read of blob ID of SIZE bytes. */
+    static void end(BlobRead event, String id, long size) {
+        if (event != null && event.shouldCommit()) {
+            event.id = id;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /** Return a BlobWrite event, begun, or null if not recording. */
+    static BlobWrite blobWrite() {
+        if (!recording()) {
+            return null;
+        }
+        BlobWrite event = new BlobWrite();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the write of blob ID of SIZE bytes. */
+    static void end(BlobWrite event, String id, long size) {
+        if (event != null && event.shouldCommit()) {
+            event.id = id;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /** Return a BranchUpdate event, begun, or null if not recording. */
+    static BranchUpdate branchUpdate() {
+        if (!recording()) {
+            return null;
+        }
+        BranchUpdate event = new BranchUpdate();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the update of the branch whose file
+     *  is BRANCH from commit PREVIOUS to commit ID. */
+    static void end(BranchUpdate event, File branch, String id,
+                    String previous) {
+        if (event != null && event.shouldCommit()) {
+            event.branch = branch.getPath();
+            event.id = id;
+            event.previous = previous;
+            event.commit();
+        }
+    }
+
+    /** Return a MergeBase event, begun, or null if not recording. */
+    static MergeBase mergeBase() {
+        if (!recording()) {
+            return null;
+        }
+        MergeBase event = new MergeBase();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT, if not null, as the search for the merge base ID of
+     *  commits LEFT and RIGHT, which visited VISITED commits. */
+    static void end(MergeBase event, String left, String right, String id,
+                    long visited) {
+        if (event != null && event.shouldCommit()) {
+            event.left = left;
+            event.right = right;
+            event.id = id;
+            event.visited = visited;
+            event.commit();
+        }
+    }
+
+    /** A commit read from the object store. */
+    @Name("gitlet.CommitRead")
+    @Label("Commit Read")
+    @Category({ "Gitlet", "Objects" })
+    @StackTrace(false)
+    static class CommitRead extends Event {
+        /** The id of the commit. */
+        @Label("Id")
+        String id;
+
+        /** The size of the commit as stored. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** A commit written to the object store. */
+    @Name("gitlet.CommitWrite")
+    @Label("Commit Write")
+    @Category({ "Gitlet", "Objects" })
+    @StackTrace(false)
+    static class CommitWrite extends Event {
+        /** The id of the commit. */
+        @Label("Id")
+        String id;
+
+        /** The size of the commit as stored. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** The contents of a blob read from the object store, into memory or
+     *  into a working file. */
+    @Name("gitlet.BlobRead")
+    @Label("Blob Read")
+    @Category({ "Gitlet", "Objects" })
+    @StackTrace(false)
+    static class BlobRead extends Event {
+        /** The id of the blob. */
+        @Label("Id")
+        String id;
+
+        /** The size of the blob's contents. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** The contents of a blob written to the object store. */
+    @Name("gitlet.BlobWrite")
+    @Label("Blob Write")
+    @Category({ "Gitlet", "Objects" })
+    @StackTrace(false)
+    static class BlobWrite extends Event {
+        /** The id of the blob. */
+        @Label("Id")
+        String id;
+
+        /** The size of the blob's contents. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** A branch of a repository, local or remote, pointed at a commit.
+     *  The branch file takes effect when the command's transaction
+     *  commits. */
+    @Name("gitlet.BranchUpdate")
+    @Label("Branch Update")
+    @Category({ "Gitlet", "Refs" })
+    static class BranchUpdate extends Event {
+        /** The branch file. */
+        @Label("Branch")
+        String branch;
+
+        /** The id of the commit the branch now points at. */
+        @Label("Id")
+        String id;
+
+        /** The id of the commit it pointed at before, if any. */
+        @Label("Previous Id")
+        String previous;
+    }
+
+    /** The merge base of two commits found in the commit graph. */
+    @Name("gitlet.MergeBase")
+    @Label("Merge Base")
+    @Category({ "Gitlet", "History" })
+    static class MergeBase extends Event {
+        /** The id of the first commit. */
+        @Label("Left")
+        String left;
+
+        /** The id of the second commit. */
+        @Label("Right")
+        String right;
+
+        /** The id of the merge base, or null if there is none. */
+        @Label("Id")
+        String id;
+
+        /** The number of commits of the graph visited to find it. */
+        @Label("Visited")
+        @Description("Commits taken from the queue of the walk")
+        long visited;
+    }
+
+    /** The events of gitlet. */
+    private static final List<Class<? extends Event>> TYPES =
+        List.of(CommitRead.class, CommitWrite.class, BlobRead.class,
+                BlobWrite.class, BranchUpdate.class, MergeBase.class);
+
+    /** The fields every event has, which report leaves out. */
+    private static final Set<String> STANDARD_FIELDS =
+        Set.of("startTime", "duration", "eventThread", "stackTrace");
+}
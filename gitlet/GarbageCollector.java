@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Deletes the objects of a store that nothing refers to any more: the
+ *  blobs of files added and then changed or removed before a commit,
+ *  commits left behind by reset or by deleted branches, and their
+ *  trees.
+ *
+ *  The mark phase walks the commit graph back from every branch and
+ *  remote branch, then reads the snapshots of the commits found on the
+ *  Workers pool, sharing the sets of trees and blobs seen so that a tree
+ *  common to many commits is read once.  The sweep phase deletes what
+ *  was not marked, but only if it is older than a grace period, since an
+ *  object written by a command still running is not yet reachable.  So
+ *  that an object the grace period keeps never loses the objects it
+ *  refers to, the commits and trees it keeps are marked from as well.
+ *  The commit graph is then merged into one table, or rebuilt if
+ *  commits were deleted.
+ *  @author Jinho Shin
+ */
+class GarbageCollector {
+
+    /** A collector for STORE. */
+    GarbageCollector(ObjectStore store) {
+        _store = store;
+    }
+
+    /** Delete everything in the store not reachable from the commits
+     *  ROOTS, the blobs STAGED or the objects last modified since the
+     *  time CUTOFF, and last modified before CUTOFF.  Return the number
+     *  of bytes freed. */
+    long collect(Collection<String> roots, Collection<String> staged,
+                 long cutoff) throws IOException {
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        List<String> starts = new ArrayList<>(roots);
+        starts.addAll(_store.recent(Pack.COMMIT, cutoff));
+        List<String> commits = commits(starts);
+        live.addAll(commits);
+        live.addAll(staged);
+        Set<String> trees = ConcurrentHashMap.newKeySet();
+        Workers.forEach(commits, id -> {
+            Commit com = _store.readCommit(id);
+            if (com.getTree() != null) {
+                Tree.reachable(_store, com.getTree(), trees, live);
+            } else {
+                live.addAll(com.getBlobs().values());
+            }
+        });
+        Workers.forEach(_store.recent(Pack.TREE, cutoff),
+            id -> Tree.reachable(_store, id, trees, live));
+        live.addAll(trees);
+        int before = _store.commitIDs().size();
+        long freed = _store.prune(live, cutoff);
+        if (_store.commitIDs().size() != before) {
+            _store.graph().rebuild();
+            _store.messages().rebuild();
+        } else {
+            _store.graph().compact();
+        }
+        return freed;
+    }
+
+    /** Return the commits reachable from ROOTS, found through the commit
+     *  graph, to which any roots missing from it are added. */
+    private List<String> commits(Collection<String> roots) {
+        CommitGraph graph = _store.graph();
+        List<Integer> start = new ArrayList<>();
+        for (String id : roots) {
+            int pos = graph.position(id);
+            if (pos != CommitGraph.NONE) {
+                start.add(pos);
+            }
+        }
+        boolean[] seen = new boolean[graph.size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>(start);
+        List<String> result = new ArrayList<>();
+        while (!work.isEmpty()) {
+            int pos = work.pop();
+            if (seen[pos]) {
+                continue;
+            }
+            seen[pos] = true;
+            result.add(graph.id(pos));
+            for (int p : new int[] {graph.parent(pos), graph.parent2(pos)}) {
+                if (p != CommitGraph.NONE && !seen[p]) {
+                    work.push(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The store collected. */
+    private final ObjectStore _store;
+}
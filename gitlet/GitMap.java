@@ -6,4 +6,18 @@ import java.util.HashMap;
  * @author Jinho Shin
  */
 public class GitMap extends HashMap<String, String> {
+
+    /** An empty map. */
+    public GitMap() {
+    }
+
+    /** An empty map with room for N entries.
+     * @param n is the expected number of entries. */
+    public GitMap(int n) {
+        super(Math.max(16, (int) (n / 0.75f) + 1));
+    }
+
+    /** Serialization version, fixed so that staging files written before
+     *  this class last changed stay readable. */
+    private static final long serialVersionUID = -8852063673726920112L;
 }
@@ -1,65 +1,140 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 
 /** Class for Gitlet project.
  * @author Jinho Shin
  */
 public class Gitlet {
 
+    /** A Gitlet for the repository in the current directory.
+     */
+    public Gitlet() {
+        this(new File(System.getProperty("user.dir")));
+    }
+
+    /** A Gitlet for the repository in a given directory.
+     * @param cwd is the working directory of the repository.
+     */
+    public Gitlet(File cwd) {
+        _CWD = cwd;
+        _GITLET = new File(_CWD, ".gitlet");
+        _HEAD = new File(_GITLET, "head");
+        _BRANCHES = new File(_GITLET, ".branches");
+        _BLOBS = new File(_GITLET, ".blobs");
+        _COMMITS = new File(_GITLET, ".commits");
+        _ADDITION = new File(_GITLET, "addition");
+        _REMOVAL = new File(_GITLET, "removal");
+        _REMOTE = new File(_GITLET, ".remote");
+        _store = new ObjectStore(_GITLET);
+        _stat = new StatIndex(_GITLET);
+        _txn = new Transaction(_GITLET);
+    }
+
     /** Current Working Directory. */
-    private File _CWD = new File(System.getProperty("user.dir"));
+    private final File _CWD;
 
     /** Gitlet directory. */
-    private File _GITLET = new File(_CWD, ".gitlet");
+    private final File _GITLET;
 
     /** Persistence for current branch. */
-    private File _HEAD = new File(_GITLET, "head");
+    private final File _HEAD;
 
     /** Directory of branches. */
-    private File _BRANCHES = new File(_GITLET, ".branches");
+    private final File _BRANCHES;
 
     /** Directory of blobs. */
-    private File _BLOBS = new File(_GITLET, ".blobs");
+    private final File _BLOBS;
 
     /** Directory of commits. */
-    private File _COMMITS = new File(_GITLET, ".commits");
-
-    /** Persistence for tracked map. */
-    private File _TRACKED = new File(_BLOBS, "tracked");
+    private final File _COMMITS;
 
     /** Persistence for addition map. */
-    private File _ADDITION = new File(_GITLET, "addition");
+    private final File _ADDITION;
 
     /** Persistence for removal map. */
-    private File _REMOVAL = new File(_GITLET, "removal");
+    private final File _REMOVAL;
 
     /** Persistence for remote branches. */
-    private File _REMOTE = new File(_GITLET, ".remote");
+    private final File _REMOTE;
+
+    /** Blobs and commits, loose or packed. */
+    private final ObjectStore _store;
+
+    /** Default milliseconds an unreachable object is kept by gc. */
+    private static final long GC_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** Cached blob ids of working files. */
+    private final StatIndex _stat;
+
+    /** The writes of the command being run. */
+    private Transaction _txn;
+
+    /** The locks held by the command being run. */
+    private Locks _locks = new Locks();
+
+    /** The contents of each staging file as last read or written by
+     * this process, so that later commands can skip reading it again.
+     */
+    private Map<File, byte[]> _stagedBytes = new HashMap<>();
+
+    /** The version of each staging file those contents are from. */
+    private Map<File, Object> _stagedVersions = new HashMap<>();
+
+    /** Commands that only read the repository. */
+    private static final Set<String> READERS =
+        Set.of("log", "global-log", "find", "status", "diff");
+
+    /** Commands that change the head, the branches or the remotes. */
+    private static final Set<String> REF_WRITERS =
+        Set.of("commit", "checkout", "branch", "rm-branch", "reset",
+               "merge", "add-remote", "rm-remote", "fetch", "pull");
+
+    /** Commands that change the staging area. */
+    private static final Set<String> STAGING_WRITERS =
+        Set.of("add", "rm", "commit", "checkout", "reset", "merge", "pull");
+
+    /** Commands that read the staging area without changing it. */
+    private static final Set<String> STAGING_READERS =
+        Set.of("status", "diff", "gc");
+
+    /** Commands that delete objects. */
+    private static final Set<String> OBJECT_DELETERS = Set.of("repack", "gc");
 
     /** Check that the argument length is correct.
      * If command != init, check for existence of .gitlet repository.
      * @param args is the argument.
      * @param length is the required length.
      */
-    public static void checkLength(String[] args, int length) {
+    public void checkLength(String[] args, int length) {
         if (args.length != length) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
-        if (!args[0].equals("init") && !new File(".gitlet").isDirectory()) {
-            System.out.println("Not in an initialized Gitlet Directory.");
-            System.exit(0);
+        if (!args[0].equals("init") && !_GITLET.isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet Directory.");
         }
     }
 
@@ -68,12 +143,10 @@ public class Gitlet {
     public void init(String[] args) throws IOException, ParseException {
         checkLength(args, 1);
         if (_GITLET.exists()) {
-            System.out.println("A Gitlet version-control system "
+            throw Utils.error("A Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
         }
         _GITLET.mkdir();
-        _HEAD.createNewFile();
         _BRANCHES.mkdir();
         _BLOBS.mkdir();
         _COMMITS.mkdir();
@@ -81,7 +154,8 @@ public class Gitlet {
         String start = "00:00:00";
         Date d = new SimpleDateFormat("HH:mm:ss").parse(start);
         Commit first = new Commit("initial commit",
-                new GitMap(), null, null, d);
+                Tree.write(_store, new GitMap()), null, null, d);
+        first.saveCommit(_store);
         String id = first.getSha();
         addBranch("master", id);
         setHead("master");
@@ -94,33 +168,24 @@ public class Gitlet {
         String name = args[1];
         File f = new File(_CWD, name);
         if (!f.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw Utils.error("File does not exist.");
         }
         loadRemoval();
         if (_removal.contains(name)) {
             _removal.remove(name);
             saveRemoval();
-            System.exit(0);
+            return;
         }
         saveRemoval();
-        String id = Utils.sha1(Utils.readContentsAsString(f) + name);
-        File blob = new File(_BLOBS, id);
+        String id = workingID(name);
+        _stat.save();
         loadAddition();
-        if (!blob.exists()) {
-            blob.createNewFile();
-        } else {
-            if (getHeadCommit().getBlobs().containsKey(name)) {
-                String original = getHeadCommit().getBlobs().get(name);
-                String content = getContentorEmpty(original);
-                if (Utils.readContentsAsString(f).equals(content)) {
-                    _addition.remove(name, id);
-                    saveAddition();
-                    System.exit(0);
-                }
-            }
+        if (sameBlob(id, getHeadCommit().getBlob(name))) {
+            _addition.remove(name);
+            saveAddition();
+            return;
         }
-        Utils.writeContents(blob, Utils.readContents(f));
+        _store.writeBlob(id, f);
         _addition.put(name, id);
         saveAddition();
     }
@@ -131,27 +196,29 @@ public class Gitlet {
         checkLength(args, 2);
         String msg = args[1];
         if (msg.isBlank()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error("Please enter a commit message.");
         }
-        loadAll();
+        loadAddition();
+        loadRemoval();
         if (_addition.isEmpty() && _removal.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
+        HashMap<String, String> changes = new HashMap<>();
         for (String name : _removal) {
-            _tracked.remove(name);
-        }
-        _tracked.putAll(_addition);
-        String head = Utils.readContentsAsString(_HEAD);
-        String parent = getHeadID();
-        Commit newCommit = new Commit(msg, _tracked, parent, null, new Date());
+            changes.put(name, null);
+        }
+        changes.putAll(_addition);
+        String head = _txn.readString(_HEAD);
+        Commit parent = getHeadCommit();
+        String tree = Tree.update(_store, Tree.of(_store, parent), changes);
+        Commit newCommit = new Commit(msg, tree, parent.getSha(), null,
+                new Date());
+        newCommit.saveCommit(_store);
         updateBranch(head, newCommit.getSha());
         _addition.clear();
         _removal.clear();
         saveAddition();
         saveRemoval();
-        saveTracked();
     }
 
     /** Rm method.
@@ -159,19 +226,19 @@ public class Gitlet {
     public void rm(String[] args) throws IOException {
         checkLength(args, 2);
         String f = args[1];
-        loadAll();
-        if (!_tracked.containsKey(f) && !_addition.containsKey(f)
+        loadAddition();
+        loadRemoval();
+        boolean tracked = getHeadCommit().getBlob(f) != null;
+        if (!tracked && !_addition.containsKey(f)
                 && !_removal.contains(f)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw Utils.error("No reason to remove the file.");
         }
         _addition.remove(f);
-        if (_tracked.containsKey(f)) {
+        if (tracked) {
             _removal.add(f);
-            File file = new File(f);
+            File file = new File(_CWD, f);
             Utils.restrictedDelete(file);
         }
-        saveTracked();
         saveAddition();
         saveRemoval();
     }
@@ -182,8 +249,7 @@ public class Gitlet {
         checkLength(args, 1);
         String c = getHeadID();
         while (c != null) {
-            File file = new File(_COMMITS, c);
-            Commit com = Utils.readObject(file, Commit.class);
+            Commit com = _store.readCommit(c);
             printLog(com);
             c = com.getParent();
         }
@@ -193,8 +259,8 @@ public class Gitlet {
      * @param args needs to be length of 1 */
     public void globalLog(String[] args) {
         checkLength(args, 1);
-        for (File f: _COMMITS.listFiles()) {
-            Commit com = Utils.readObject(f, Commit.class);
+        for (String id: _store.commitIDs()) {
+            Commit com = _store.readCommit(id);
             printLog(com);
         }
     }
@@ -211,20 +277,27 @@ public class Gitlet {
     }
 
     /** Find method.
-     * @param args [1] is the message to match the commit with.
+     * @param args [1] is the message to match the commit with,
+     * or --contains followed by text the message must contain,
+     * or --words followed by words the message must contain.
      */
     public void find(String[] args) {
-        checkLength(args, 2);
-        String msg = args[1];
-        boolean found = false;
-        for (File f: _COMMITS.listFiles()) {
-            Commit com = Utils.readObject(f, Commit.class);
-            if (com.getMessage().equals(msg)) {
-                found = true;
-                System.out.println(com.getSha());
-            }
+        boolean option = args.length == 3
+            && (args[1].equals("--contains") || args[1].equals("--words"));
+        checkLength(args, option ? 3 : 2);
+        List<String> found;
+        MessageIndex index = _store.messages();
+        if (option && args[1].equals("--contains")) {
+            found = index.containing(args[2]);
+        } else if (option) {
+            found = index.matchingWords(args[2]);
+        } else {
+            found = index.exact(args[1]);
+        }
+        for (String id: found) {
+            System.out.println(id);
         }
-        if (!found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message");
         }
     }
@@ -236,9 +309,11 @@ public class Gitlet {
     public void status(String[] args) throws IOException {
         checkLength(args, 1);
         System.out.println("=== Branches ===");
-        String head = Utils.readContentsAsString(_HEAD);
+        String head = _txn.readString(_HEAD);
         for (String s : Utils.plainFilenamesIn(_BRANCHES)) {
-            if (head.equals(s)) {
+            if (s.startsWith(".")) {
+                continue;
+            } else if (head.equals(s)) {
                 System.out.println("*" + s);
             } else {
                 System.out.println(s);
@@ -250,15 +325,12 @@ public class Gitlet {
         ArrayList<String> notStaged = new ArrayList<>();
         loadAll();
         _tracked = getHeadCommit().getBlobs();
+        HashMap<String, String> ids = workingIDs();
         for (String s: _addition.keySet()) {
-            File working = new File(s);
-            if (!working.exists()) {
+            if (!ids.containsKey(s)) {
                 notStaged.add(s + " (deleted)");
             } else {
-                String s1 = Utils.readContentsAsString(working);
-                File blob = new File(_BLOBS, _addition.get(s));
-                String s2 = Utils.readContentsAsString(blob);
-                if (!s1.equals(s2)) {
+                if (!sameBlob(ids.get(s), _addition.get(s))) {
                     notStaged.add(s + " (modified)");
                 } else {
                     staged.add(s);
@@ -266,20 +338,17 @@ public class Gitlet {
             }
         }
         for (String s: _tracked.keySet()) {
-            File working = new File(s);
-            if (!working.exists()) {
+            if (!ids.containsKey(s)) {
                 if (!_removal.contains(s)) {
                     notStaged.add(s + " (deleted)");
                 } else {
                     removed.add(s);
                 }
-            } else {
-                String original = Utils.readContentsAsString(working);
-                if (!getContentorEmpty(_tracked.get(s)).equals(original)) {
-                    notStaged.add(s + " (modified)");
-                }
+            } else if (!sameBlob(ids.get(s), _tracked.get(s))) {
+                notStaged.add(s + " (modified)");
             }
         }
+        _stat.save();
         sortPrint("=== Staged Files ===", staged, true);
         sortPrint("=== Removed Files ===", removed, true);
         sortPrint("=== Modifications Not Staged For Commit ===",
@@ -287,16 +356,111 @@ public class Gitlet {
         sortPrint("=== Untracked Files ===", getUnTracked(), false);
     }
 
-    /** Get untracked files.
-     * @return ArrayList of untracked files.
+    /** diff method.
+     * With no operands, shows the changes in the working directory that
+     * are not staged; with two commit ids, the changes between the two
+     * commits.  The output is written as it is produced, and the
+     * files compared are mapped rather than read into memory.
+     * @param args [1] and [2] are the ids of the commits, if given.
+     * @throws IOException
      */
-    public ArrayList<String> getUnTracked() {
-        ArrayList<String> unTracked = new ArrayList<>();
-        for (String s: Utils.plainFilenamesIn(_CWD)) {
-            if (!_addition.containsKey(s) && !_tracked.containsKey(s)) {
-                unTracked.add(s);
+    public void diff(String[] args) throws IOException {
+        checkLength(args, args.length == 3 ? 3 : 1);
+        OutputStream out = new BufferedOutputStream(System.out,
+                Utils.BUFFER_SIZE);
+        if (args.length == 3) {
+            Commit c1 = _store.readCommit(resolveID(args[1]));
+            Commit c2 = _store.readCommit(resolveID(args[2]));
+            Map<String, String[]> changed =
+                c1.getTree() != null && c2.getTree() != null
+                ? Tree.diff(_store, c1.getTree(), c2.getTree())
+                : Tree.diff(c1.getBlobs(), c2.getBlobs());
+            for (Map.Entry<String, String[]> e : changed.entrySet()) {
+                String[] ids = e.getValue();
+                if (sameBlob(ids[0], ids[1])) {
+                    continue;
+                }
+                Diff.unified(e.getKey(), mapBlob(ids[0]),
+                        mapBlob(ids[1]), out);
+            }
+        } else {
+            loadAll();
+            TreeMap<String, String> index = new TreeMap<>(_tracked);
+            for (String name : _removal) {
+                index.remove(name);
+            }
+            index.putAll(_addition);
+            HashMap<String, String> ids = workingIDs();
+            _stat.save();
+            for (Map.Entry<String, String> e : index.entrySet()) {
+                String name = e.getKey();
+                if (!ids.containsKey(name)) {
+                    Diff.unified(name, mapBlob(e.getValue()), null, out);
+                } else if (!sameBlob(ids.get(name), e.getValue())) {
+                    Diff.unified(name, mapBlob(e.getValue()),
+                            Utils.mapContents(new File(_CWD, name)), out);
+                }
             }
         }
+        out.flush();
+    }
+
+    /** Map the contents of a blob that may be missing, extracting it
+     * to a temporary file first, since it is stored compressed.
+     * @param id is the id of the blob, or null.
+     * @return the contents of the blob, or null if id is null.
+     */
+    private ByteBuffer mapBlob(String id) {
+        if (id == null) {
+            return null;
+        }
+        File temp = new File(_GITLET, ".diff.tmp"
+                + ProcessHandle.current().pid() + "-" + System.nanoTime());
+        try {
+            _store.extractBlob(id, temp);
+            return Utils.mapContents(temp);
+        } finally {
+            if (!temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /** Read a blob that may be missing.
+     * @param id is the id of the blob, or null.
+     * @return the contents of the blob, or null if id is null.
+     */
+    private byte[] readOrNull(String id) {
+        return id == null ? null : _store.readBlob(id);
+    }
+
+    /** Get the blob ids of the staged and tracked files that exist in
+     * the working directory, hashing them in parallel.
+     * @return map of file names to blob ids.
+     */
+    public HashMap<String, String> workingIDs() {
+        Set<String> names = new HashSet<>(_addition.keySet());
+        names.addAll(_tracked.keySet());
+        List<String> present = Workers.filter(names,
+            s -> new File(_CWD, s).isFile());
+        List<String> ids = Workers.map(present, this::workingID);
+        HashMap<String, String> result = new HashMap<>();
+        for (int i = 0; i < present.size(); i += 1) {
+            result.put(present.get(i), ids.get(i));
+        }
+        return result;
+    }
+
+    /** Get untracked files.
+     * @return ArrayList of untracked files, in sorted order.
+     */
+    public ArrayList<String> getUnTracked() {
+        String[] names = _CWD.list();
+        ArrayList<String> unTracked = new ArrayList<>(Workers.filter(
+            Arrays.asList(names == null ? new String[0] : names),
+            s -> !_addition.containsKey(s) && !_tracked.containsKey(s)
+                && new File(_CWD, s).isFile()));
+        Collections.sort(unTracked);
         return unTracked;
     }
 
@@ -323,15 +487,13 @@ public class Gitlet {
      */
     public void checkout(String[] args) throws IOException {
         if (args.length > 4 || args.length < 2) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
         if (args.length == 2) {
             checkoutBranch(args[1]);
         } else if (args.length == 4) {
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
             checkoutID(args[1], args[3]);
         } else {
@@ -345,18 +507,12 @@ public class Gitlet {
      * @throws IOException
      */
     public void checkoutFile(Commit c, String name) throws IOException {
-        GitMap blobs = c.getBlobs();
-        if (!blobs.containsKey(name)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        String id = c.getBlob(name);
+        if (id == null) {
+            throw Utils.error("File does not exist in that commit.");
         }
-        String id = blobs.get(name);
-        File blob = new File(_BLOBS, id);
         File target = new File(_CWD, name);
-        if (!target.exists()) {
-            target.createNewFile();
-        }
-        Utils.writeContents(target, Utils.readContents(blob));
+        _store.extractBlob(id, target);
     }
 
     /** Checkout a file according to the ID.
@@ -365,72 +521,62 @@ public class Gitlet {
      * @throws IOException
      */
     public void checkoutID(String id, String name) throws IOException {
-        if (id.length() < 10 * 4) {
-            for (File file: _COMMITS.listFiles()) {
-                if (file.getName().contains(id)) {
-                    id = file.getName();
-                    break;
-                }
-            }
-        }
-        File f = new File(_COMMITS, id);
-        if (!f.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Commit com = Utils.readObject(f, Commit.class);
+        Commit com = _store.readCommit(resolveID(id));
         checkoutFile(com, name);
     }
 
+    /** Resolve a full or abbreviated commit id.
+     * @param id is the id, or a unique prefix of one.
+     * @return the full id.
+     */
+    public String resolveID(String id) {
+        if (id.length() == Utils.UID_LENGTH && _store.hasCommit(id)) {
+            return id;
+        }
+        List<String> found = id.isEmpty()
+            ? new ArrayList<>() : _store.graph().resolve(id, 2);
+        if (found.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (found.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
+        }
+        return found.get(0);
+    }
+
     /** Checkout according to branch.
      * @param branch is the name of the branch to find.
      * @throws IOException
      */
     public void checkoutBranch(String branch) throws IOException {
         File b = new File(_BRANCHES, branch);
-        if (!b.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        if (!_txn.exists(b)) {
+            throw Utils.error("No such branch exists.");
         }
-        String current = Utils.readContentsAsString(_HEAD);
+        String current = _txn.readString(_HEAD);
         if (current.equals(branch)) {
-            System.out.println("No need to check out the current branch.");
-            System.exit(0);
+            throw Utils.error("No need to check out the current branch.");
         }
         loadAll();
         if (!getUnTracked().isEmpty()) {
-            System.out.println("There is an untracked file in the way; "
+            throw Utils.error("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
-            System.exit(0);
-        }
-        String id = Utils.readContentsAsString(b);
-        File c = new File(_COMMITS, id);
-        Commit com = Utils.readObject(c, Commit.class);
-        Set<String> checked = new HashSet<>();
-        checked.addAll(com.getBlobs().keySet());
-        for (String s: Utils.plainFilenamesIn(_CWD)) {
-            if (!checked.contains(s)) {
-                new File(s).delete();
-            } else {
-                File work = new File(s);
-                File prev = new File(_BLOBS, com.getBlobs().get(s));
-                Utils.writeContents(work, Utils.readContents(prev));
-            }
-            checked.remove(s);
-        }
-        for (String ch: checked) {
-            File newFile = new File(ch);
-            newFile.createNewFile();
-            File prev = new File(_BLOBS, com.getBlobs().get(ch));
-            Utils.writeContents(newFile, Utils.readContents(prev));
         }
+        String id = _txn.readString(b);
+        Commit com = _store.readCommit(id);
+        GitMap blobs = com.getBlobs();
+        Workers.forEach(Utils.plainFilenamesIn(_CWD), s -> {
+            if (!blobs.containsKey(s)) {
+                new File(_CWD, s).delete();
+            }
+        });
+        Workers.forEach(blobs.keySet(),
+            s -> _store.extractBlob(blobs.get(s), new File(_CWD, s)));
         setHead(branch);
         _addition.clear();
         _removal.clear();
         saveAddition();
         saveRemoval();
         _tracked = com.getBlobs();
-        saveTracked();
     }
 
 
@@ -442,9 +588,8 @@ public class Gitlet {
         checkLength(args, 2);
         String newBranch = args[1];
         File b = new File(_BRANCHES, newBranch);
-        if (b.exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (_txn.exists(b)) {
+            throw Utils.error("A branch with that name already exists.");
         }
         addBranch(newBranch, getHeadID());
     }
@@ -456,15 +601,13 @@ public class Gitlet {
         checkLength(args, 2);
         String name = args[1];
         File branch = new File(_BRANCHES, name);
-        if (!branch.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!_txn.exists(branch)) {
+            throw Utils.error("A branch with that name does not exist.");
         }
-        if (name.equals(Utils.readContentsAsString(_HEAD))) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+        if (name.equals(_txn.readString(_HEAD))) {
+            throw Utils.error("Cannot remove the current branch.");
         }
-        branch.delete();
+        _txn.delete(branch);
     }
 
     /** reset method.
@@ -473,58 +616,51 @@ public class Gitlet {
      */
     public void reset(String[] args) throws IOException {
         checkLength(args, 2);
-        String id = args[1];
-        File f = new File(_COMMITS, id);
-        if (!f.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        String head = Utils.readContentsAsString(_HEAD);
+        String id = resolveID(args[1]);
+        String head = _txn.readString(_HEAD);
         addBranch("temp", id);
-        checkoutBranch("temp");
-        setHead(head);
-        updateBranch(head, id);
-        rmBranch(new String[] {"rm", "temp"});
+        try {
+            checkoutBranch("temp");
+            setHead(head);
+            updateBranch(head, id);
+        } finally {
+            _txn.delete(new File(_BRANCHES, "temp"));
+        }
     }
 
     /** Check if merge is possible and return the split ID.
      * @param name the name of the branch.
-     * @return the splitID.
+     * @return the splitID, or null if the current branch was
+     * fast-forwarded instead.
      * @throws IOException
      */
     public String mergeCheck(String name) throws IOException {
         if (getBranchID(name) == null) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name does not exist.");
         }
-        if (name.equals((Utils.readContentsAsString(_HEAD)))) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+        if (name.equals((_txn.readString(_HEAD)))) {
+            throw Utils.error("Cannot merge a branch with itself.");
         }
         String splitID = findSplitPoint(getHeadID(), getBranchID(name));
         if (splitID.equals(getBranchID(name))) {
-            System.out.println("Given branch is an ancestor of"
+            throw Utils.error("Given branch is an ancestor of"
                     + " the current branch.");
-            System.exit(0);
         }
         if (splitID.equals(getHeadID())) {
             System.out.println("Current branch fast-forwarded.");
             checkoutBranch(name);
-            System.exit(0);
+            return null;
         }
         if (getBranchID(name).equals(getHeadID())) {
-            System.out.println("No changes added to the commit");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit");
         }
         loadAll();
         if (!_addition.isEmpty() || !_removal.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
         if (!getUnTracked().isEmpty()) {
-            System.out.println("There is an untracked file in the way; "
+            throw Utils.error("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
-            System.exit(0);
         }
         return splitID;
     }
@@ -538,42 +674,49 @@ public class Gitlet {
         }
         _tracked.putAll(_addition);
         Commit mergeCommit = new Commit("Merged " + name + " into "
-                + Utils.readContentsAsString(_HEAD) + ".", _tracked,
+                + _txn.readString(_HEAD) + ".",
+                Tree.write(_store, _tracked),
                 getHeadID(), getBranchID(name), new Date());
-        updateBranch(Utils.readContentsAsString(_HEAD), mergeCommit.getSha());
+        mergeCommit.saveCommit(_store);
+        updateBranch(_txn.readString(_HEAD), mergeCommit.getSha());
         _addition.clear();
         _removal.clear();
         saveAddition();
         saveRemoval();
-        saveTracked();
     }
 
     /** Handling merge conflict.
-     * @param conflictFiles is the list of files conficted.
+     * Files changed on both sides are merged line by line against their
+     * version at the split point; only the changes that overlap or touch
+     * are left between conflict markers.  Changes touch when they are to
+     * adjacent lines, so edits to neighbouring lines, and a deletion next
+     * to or over a line the other side changed, are conflicts.  A file
+     * deleted on one side and changed on the other conflicts as a
+     * whole.
+     * @param conflictFiles is the list of files changed on both sides.
+     * @param split is the split point.
      * @param current is the current branch.
      * @param branch is the branch to be merged into.
      * @throws IOException
      */
     public void mergeConflict(ArrayList<String> conflictFiles,
+                              GitMap split,
                               GitMap current,
                               GitMap branch)
             throws IOException {
+        boolean conflicted = false;
         for (String s: conflictFiles) {
-            String content = "<<<<<<< HEAD" + "\n"
-                    + getContentorEmpty(current.get(s))
-                    + "=======" + "\n"
-                    + getContentorEmpty(branch.get(s))
-                    + ">>>>>>>" + "\n";
-            String id = Utils.sha1(content + s);
-            File conflictBlob = new File(_BLOBS, id);
-            conflictBlob.createNewFile();
-            Utils.writeContents(conflictBlob, content);
-            File conflictFile = new File(s);
-            conflictFile.createNewFile();
-            Utils.writeContents(conflictFile, content);
+            ByteArrayOutputStream merged = new ByteArrayOutputStream();
+            conflicted |= Diff.merge(readOrNull(split.get(s)),
+                    readOrNull(current.get(s)), readOrNull(branch.get(s)),
+                    merged);
+            byte[] content = merged.toByteArray();
+            String id = Utils.sha1(content);
+            _store.writeBlob(id, content);
+            Utils.writeContents(new File(_CWD, s), content);
             _addition.put(s, id);
         }
-        if (!conflictFiles.isEmpty()) {
+        if (conflicted) {
             System.out.println("Encountered a merge conflict.");
         }
     }
@@ -586,13 +729,14 @@ public class Gitlet {
         checkLength(args, 2);
         String branchName = args[1];
         String splitID = mergeCheck(branchName);
-        Commit splitcom = Utils.readObject(new File(_COMMITS, splitID),
-                Commit.class);
-        Commit curcom = Utils.readObject(new File(_COMMITS, getHeadID()),
-                Commit.class);
-        Commit branchcom = Utils.readObject(new File(_COMMITS,
-                getBranchID(branchName)), Commit.class);
-        _tracked = curcom.getBlobs();
+        if (splitID == null) {
+            return;
+        }
+        Commit splitcom = _store.readCommit(splitID);
+        Commit curcom = _store.readCommit(getHeadID());
+        Commit branchcom = _store.readCommit(getBranchID(branchName));
+        _tracked = new GitMap();
+        _tracked.putAll(curcom.getBlobs());
         GitMap split = splitcom.getBlobs();
         GitMap current = curcom.getBlobs();
         GitMap branch = branchcom.getBlobs();
@@ -600,9 +744,9 @@ public class Gitlet {
         for (String s: split.keySet()) {
             if (branch.containsKey(s)) {
                 if (current.containsKey(s)) {
-                    if (!contentEquals(split.get(s), branch.get(s))) {
-                        if (!contentEquals(split.get(s), current.get(s))) {
-                            if (!contentEquals(current.get(s), branch.get(s))) {
+                    if (!sameBlob(split.get(s), branch.get(s))) {
+                        if (!sameBlob(split.get(s), current.get(s))) {
+                            if (!sameBlob(current.get(s), branch.get(s))) {
                                 conflictFiles.add(s);
                             }
                         } else {
@@ -611,15 +755,15 @@ public class Gitlet {
                         }
                     }
                 } else
-                    if (!contentEquals(branch.get(s), split.get(s))) {
+                    if (!sameBlob(branch.get(s), split.get(s))) {
                         conflictFiles.add(s);
                     }
             } else
                 if (current.containsKey(s)) {
-                    if (!contentEquals(split.get(s), current.get(s))) {
+                    if (!sameBlob(split.get(s), current.get(s))) {
                         conflictFiles.add(s);
                     } else {
-                        new File(s).delete();
+                        new File(_CWD, s).delete();
                         _tracked.remove(s);
                     }
                 }
@@ -629,12 +773,12 @@ public class Gitlet {
                 if (!current.containsKey(s)) {
                     checkoutID(getBranchID(branchName), s);
                     _addition.put(s, branch.get(s));
-                } else if (!contentEquals(current.get(s), branch.get(s))) {
+                } else if (!sameBlob(current.get(s), branch.get(s))) {
                     conflictFiles.add(s);
                 }
             }
         }
-        mergeConflict(conflictFiles, current, branch);
+        mergeConflict(conflictFiles, split, current, branch);
         mergeCommit(branchName);
     }
 
@@ -644,73 +788,7 @@ public class Gitlet {
      * @return split point's commit id.
      */
     public String findSplitPoint(String s1, String s2) {
-        HashMap<String, Integer> distances = getClosest(getParents(s1, 0), s2);
-        String result = null;
-        int min = _COMMITS.listFiles().length;
-        for (String s: distances.keySet()) {
-            if (distances.get(s) <= min) {
-                min = distances.get(s);
-                result = s;
-            }
-        }
-        return result;
-    }
-
-    /** Get parents of a certain commit.
-     * @param id is the commit's id.
-     * @param distance is used to keep track of the distance from this commit.
-     * @return the map of ids and distances.
-     */
-    public HashMap<String, Integer> getParents(String id, Integer distance) {
-        HashMap<String, Integer> result = new HashMap<>();
-        while (id != null) {
-            result.put(id, distance);
-            distance += 1;
-            File f = new File(_COMMITS, id);
-            Commit com = Utils.readObject(f, Commit.class);
-            id = com.getParent();
-            if (com.getParent2() != null) {
-                HashMap<String, Integer> result2
-                        = getParents(com.getParent2(), distance);
-                result.putAll(result2);
-            }
-        }
-
-        return result;
-    }
-
-    /** Get the closest parent(s).
-     * could be multiple due to merge parents.
-     * @param parents is the map of parents and distances from current branch.
-     * @param id is the id of the target branch.
-     * @return the map of possible split points and their distances
-     * from the current branch.
-     */
-    public HashMap<String, Integer> getClosest(HashMap<String, Integer>
-                                                        parents, String id) {
-        HashMap<String, Integer> result = new HashMap<>();
-        String closest = null;
-        int min = _COMMITS.listFiles().length;
-        while (id != null) {
-            File f = new File(_COMMITS, id);
-            Commit com = Utils.readObject(f, Commit.class);
-            if (parents.containsKey(id)) {
-                if (parents.get(id) < min) {
-                    closest = id;
-                    min = parents.get(id);
-                } else {
-                    break;
-                }
-            }
-            if (com.getParent2() != null) {
-                HashMap<String, Integer> result2
-                        = getClosest(parents, com.getParent2());
-                result.putAll(result2);
-            }
-            id = com.getParent();
-        }
-        result.put(closest, min);
-        return result;
+        return _store.graph().mergeBase(s1, s2);
     }
 
     /** add-remote method.
@@ -722,12 +800,10 @@ public class Gitlet {
         String name = args[1];
         String directory = args[2];
         File newdir = new File(_REMOTE, name);
-        if (newdir.exists()) {
-            System.out.println("A remote with that name already exists.");
-            System.exit(0);
+        if (_txn.exists(newdir)) {
+            throw Utils.error("A remote with that name already exists.");
         }
-        newdir.createNewFile();
-        Utils.writeContents(newdir, directory);
+        _txn.write(newdir, directory);
     }
 
     /** re-remote method.
@@ -737,11 +813,10 @@ public class Gitlet {
         checkLength(args, 2);
         String name = args[1];
         File dir = new File(_REMOTE, name);
-        if (!dir.exists()) {
-            System.out.println("A remote with that name does not exist.");
-            System.exit(0);
+        if (!_txn.exists(dir)) {
+            throw Utils.error("A remote with that name does not exist.");
         }
-        dir.delete();
+        _txn.delete(dir);
     }
 
     /** push method.
@@ -753,53 +828,29 @@ public class Gitlet {
         checkLength(args, 3);
         String name = args[1];
         String branch = args[2];
-        String remote = Utils.readContentsAsString(new File(_REMOTE, name));
+        String remote = _txn.readString(new File(_REMOTE, name));
         File rdir = new File(_CWD, remote);
         if (!rdir.exists()) {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
+        }
+        boolean relocked = _locks.lock(rdir, Locks.OBJECTS, true);
+        relocked |= _locks.lock(rdir, Locks.REFS, false);
+        if (relocked) {
+            refresh();
         }
         File rbranches = new File(rdir, ".branches");
         File bFile = new File(rbranches, branch);
-        if (!bFile.exists()) {
-            bFile.createNewFile();
-            remoteaddCommits(getHeadID(), null, rdir);
-        } else {
-            String remoteID = Utils.readContentsAsString(bFile);
-            if (!getParents(getHeadID(), 0).containsKey(remoteID)) {
-                System.out.println("Please pull down remote "
+        if (_txn.exists(bFile)) {
+            String remoteID = _txn.readString(bFile);
+            if (!_store.graph().isAncestor(remoteID, getHeadID())) {
+                throw Utils.error("Please pull down remote "
                         + "changes before pushing.");
-                System.exit(0);
             }
-            remoteaddCommits(getHeadID(), remoteID, rdir);
-        }
-        Utils.writeContents(bFile, getHeadID());
-    }
-
-    /** add commits to the remote directory.
-     * @param local is the id of the local head.
-     * @param remote is the id of the remote head to track from.
-     * @param dir is the remote directory.
-     * @throws IOException
-     */
-    public void remoteaddCommits(String local, String remote, File dir)
-            throws IOException {
-        File rcommits = new File(dir, ".commits");
-        File rblobs = new File(dir, ".blobs");
-        while (local != null && !local.equals(remote)) {
-            Commit com = Utils.readObject(new File(_COMMITS, local),
-                    Commit.class);
-            for (String blob: com.getBlobs().keySet()) {
-                if (!new File(rblobs, blob).exists()) {
-                    Files.copy(new File(_BLOBS,
-                                    com.getBlobs().get(blob)).toPath(),
-                            new File(rblobs, blob).toPath());
-                }
-            }
-            Files.copy(new File(_COMMITS, com.getSha()).toPath(),
-                 new File(rcommits, com.getSha()).toPath());
-            local = com.getParent();
         }
+        ObjectStore rstore = new ObjectStore(rdir);
+        rstore.join(_txn);
+        new Transfer(_store, rstore).send(getHeadID());
+        writeBranch(bFile, getHeadID());
     }
 
     /** fetch method.
@@ -811,31 +862,24 @@ public class Gitlet {
         checkLength(args, 3);
         String name = args[1];
         String branch = args[2];
-        String remote = Utils.readContentsAsString(new File(_REMOTE, name));
+        String remote = _txn.readString(new File(_REMOTE, name));
         File rdir = new File(_CWD, remote);
         if (!rdir.exists()) {
-            System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
+        }
+        boolean relocked = _locks.lock(rdir, Locks.OBJECTS, true);
+        relocked |= _locks.lock(rdir, Locks.REFS, true);
+        if (relocked) {
+            refresh();
         }
         File rbranches = new File(rdir, ".branches");
         File rbranch = new File(rbranches, branch);
-        if (!rbranch.exists()) {
-            System.out.println("That remote does not have that branch.");
-            System.exit(0);
-        }
-        for (File c: new File(rdir, ".commits").listFiles()) {
-            if (!new File(_COMMITS, c.getName()).exists()) {
-                Files.copy(c.toPath(), new File(_COMMITS,
-                        c.getName()).toPath());
-            }
-        }
-        for (File b: new File(rdir, ".blobs").listFiles()) {
-            if (!new File(_BLOBS, b.getName()).exists()) {
-                Files.copy(b.toPath(), new File(_BLOBS, b.getName()).toPath());
-            }
+        if (!_txn.exists(rbranch)) {
+            throw Utils.error("That remote does not have that branch.");
         }
+        String id = _txn.readString(rbranch);
+        new Transfer(new ObjectStore(rdir), _store).send(id);
         String bname = name + "/" + branch;
-        String id = Utils.readContentsAsString(rbranch);
         new File(_BRANCHES, name).mkdir();
         addBranch(bname, id);
     }
@@ -853,17 +897,162 @@ public class Gitlet {
         merge(new String[] {"merge", name + "/" + branch});
     }
 
-    /** Check if two blobs have the same content.
-     * @param id1 is the first id.
-     * @param id2 is the second id.
+    /** repack method.
+     * Moves all loose blobs and commits into pack files, and brings the
+     * tables of the commit graph and the message index up to date.
+     * @param args has to be length of 1.
+     * @throws IOException
+     */
+    public void repack(String[] args) throws IOException {
+        checkLength(args, 1);
+        _store.repack();
+        _store.graph().compact();
+        _store.messages().compact();
+    }
+
+    /** gc method.
+     * Deletes the objects that no branch, remote branch or staged file
+     * refers to, once they are older than the grace period, and reports
+     * the space freed and the time taken.
+     * @param args [1], if given, is --grace=SECONDS, the grace period.
+     * @throws IOException
+     */
+    public void gc(String[] args) throws IOException {
+        checkLength(args, args.length == 2 ? 2 : 1);
+        long grace = GC_GRACE;
+        if (args.length == 2) {
+            if (!args[1].startsWith("--grace=")) {
+                throw Utils.error("Incorrect operands.");
+            }
+            try {
+                grace = Long.parseLong(args[1].substring(8)) * 1000;
+            } catch (NumberFormatException excp) {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        long start = System.nanoTime();
+        List<String> roots = new ArrayList<>();
+        File[] refs = _BRANCHES.listFiles();
+        for (File ref : refs == null ? new File[0] : refs) {
+            File[] remoteRefs = ref.isDirectory() ? ref.listFiles()
+                : new File[] {ref};
+            for (File f : remoteRefs == null ? new File[0] : remoteRefs) {
+                if (f.isFile() && !f.getName().startsWith(".")) {
+                    roots.add(Utils.readContentsAsString(f));
+                }
+            }
+        }
+        loadAddition();
+        long freed = new GarbageCollector(_store).collect(roots,
+                _addition.values(), System.currentTimeMillis() - grace);
+        System.out.println("Reclaimed " + freed + " bytes in "
+                + (System.nanoTime() - start) / 1000000 + " ms.");
+    }
+
+    /** batch method.
+     * Runs the commands in a file, or on the standard input, one per
+     * line, each framed in the output as described in Batch.
+     * @param args [1], if given, is the name of the file.
+     * @throws IOException
+     */
+    public void batch(String[] args) throws IOException {
+        if (args.length > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (args.length == 2 && !new File(_CWD, args[1]).isFile()) {
+            throw Utils.error("File does not exist.");
+        }
+        try (BufferedReader script = args.length == 2
+                ? Files.newBufferedReader(new File(_CWD, args[1]).toPath())
+                : new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8))) {
+            new Batch(this).run(script);
+        }
+    }
+
+    /** daemon method.
+     * Serves commands from gitlet.Client until stopped, keeping this
+     * repository's caches warm between them.
+     * @param args has to be length of 1.
+     * @throws IOException
+     */
+    public void daemon(String[] args) throws IOException {
+        checkLength(args, 1);
+        new Daemon(this, _GITLET).serve();
+    }
+
+    /** Start a new transaction for the writes of the next command,
+     * first finishing any a crashed command left, and wait for the locks
+     * it needs: shared locks on what it only reads, so that readers run
+     * together, and exclusive locks on what it changes.
+     * @param command is the name of the command.
+     * @throws IOException
+     */
+    public void begin(String command) throws IOException {
+        _txn = new Transaction(_GITLET);
+        _store.join(_txn);
+        if (!_GITLET.isDirectory()
+                || !READERS.contains(command) && !REF_WRITERS.contains(command)
+                && !STAGING_WRITERS.contains(command)
+                && !OBJECT_DELETERS.contains(command)
+                && !command.equals("push")) {
+            return;
+        }
+        Transaction.recover(_GITLET, command.equals("gc"));
+        _locks.lock(_GITLET, Locks.OBJECTS,
+                !OBJECT_DELETERS.contains(command));
+        _locks.lock(_GITLET, Locks.REFS, !REF_WRITERS.contains(command));
+        if (STAGING_WRITERS.contains(command)
+                || STAGING_READERS.contains(command)) {
+            _locks.lock(_GITLET, Locks.STAGING,
+                    !STAGING_WRITERS.contains(command));
+        }
+        refresh();
+    }
+
+    /** Finish the transaction of the command just run.
+     * @param ok is whether the command succeeded; if so, its writes are
+     * made durable and visible, and otherwise they are discarded.  Its
+     * locks are then released.
+     * @throws IOException
+     */
+    public void end(boolean ok) throws IOException {
+        try {
+            if (ok) {
+                Map<File, byte[]> saved = new HashMap<>();
+                for (File f : new File[] {_ADDITION, _REMOVAL}) {
+                    if (_txn.pending(f) && _txn.exists(f)) {
+                        saved.put(f, _txn.read(f));
+                    }
+                }
+                _txn.commit();
+                for (Map.Entry<File, byte[]> e : saved.entrySet()) {
+                    _stagedVersions.put(e.getKey(), version(e.getKey()));
+                    _stagedBytes.put(e.getKey(), e.getValue());
+                }
+            } else {
+                _txn.abort();
+            }
+        } finally {
+            _store.join(null);
+            _locks.release();
+        }
+    }
+
+    /** Drop cached state that another process may have changed, before
+     * running a command in a long-lived process.
+     */
+    public void refresh() {
+        _store.refresh();
+    }
+
+    /** Check if two blobs have the same content, by their ids alone.
+     * @param id1 is the first id, or null.
+     * @param id2 is the second id, or null.
      * @return boolean of whether they have same content.
      */
-    public boolean contentEquals(String id1, String id2) {
-        File f1 = new File(_BLOBS, id1);
-        File f2 = new File(_BLOBS, id2);
-        String s1 = Utils.readContentsAsString(f1);
-        String s2 = Utils.readContentsAsString(f2);
-        return s1.equals(s2);
+    public boolean sameBlob(String id1, String id2) {
+        return Objects.equals(_store.contentID(id1), _store.contentID(id2));
     }
 
     /** Add a branch.
@@ -872,11 +1061,7 @@ public class Gitlet {
      * @throws IOException
      */
     public void addBranch(String name, String id) throws IOException {
-        File newBranch = new File(_BRANCHES, name);
-        if (!newBranch.exists()) {
-            newBranch.createNewFile();
-        }
-        Utils.writeContents(newBranch, id);
+        writeBranch(new File(_BRANCHES, name), id);
     }
 
     /** Update a branch.
@@ -884,20 +1069,28 @@ public class Gitlet {
      * @param id is the id of the commit to point to.
      */
     public void updateBranch(String name, String id) {
-        File branch = new File(_BRANCHES, name);
-        Utils.writeContents(branch, id);
+        writeBranch(new File(_BRANCHES, name), id);
+    }
+
+    /** Point a branch, local or remote, at a commit.
+     * @param branch is the branch file.
+     * @param id is the id of the commit to point to.
+     */
+    private void writeBranch(File branch, String id) {
+        Events.BranchUpdate event = Events.branchUpdate();
+        String previous = event != null && _txn.exists(branch)
+            ? _txn.readString(branch) : null;
+        _txn.write(branch, id);
+        Events.end(event, branch, id, previous);
     }
 
-    /** Get content (or empty string) of the blob.
-     * @param id is the id of the blob.
-     * @return the content as string.
+    /** Get the blob id that the working file would be stored under,
+     * rehashing it only if it changed since it was last hashed.
+     * @param name is the name of the file.
+     * @return the id.
      */
-    public String getContentorEmpty(String id) {
-        if (id == null) {
-            return "";
-        }
-        File f = new File(_BLOBS, id);
-        return Utils.readContentsAsString(f);
+    public String workingID(String name) {
+        return _stat.id(new File(_CWD, name), name);
     }
 
     /** Get id of the branch.
@@ -906,62 +1099,44 @@ public class Gitlet {
      */
     public String getBranchID(String name) {
         File branch = new File(_BRANCHES, name);
-        if (!branch.exists()) {
+        if (!_txn.exists(branch)) {
             return null;
         }
-        return Utils.readContentsAsString(branch);
+        return _txn.readString(branch);
     }
 
     /** Set head to the branch given.
      * @param name is the name of the branch.
      */
     public void setHead(String name) {
-        Utils.writeContents(_HEAD, name);
+        _txn.write(_HEAD, name);
     }
 
     /** Get head commit.
      * @return the head commit.
      */
     public Commit getHeadCommit() {
-        String id = getHeadID();
-        File f = new File(_COMMITS, id);
-        return Utils.readObject(f, Commit.class);
+        return _store.readCommit(getHeadID());
     }
 
     /** Returns the id of the head commit.
      * @return the id of the head commit.
      * */
     public String getHeadID() {
-        String name = Utils.readContentsAsString(_HEAD);
-        File f = new File(_BRANCHES, name);
-        return Utils.readContentsAsString(f);
+        String name = _txn.readString(_HEAD);
+        return _txn.readString(new File(_BRANCHES, name));
     }
 
     /** Save _addition for persistence.
      */
     public void saveAddition() throws IOException {
-        if (!_ADDITION.exists()) {
-            _ADDITION.createNewFile();
-        }
-        Utils.writeObject(_ADDITION, _addition);
+        _txn.write(_ADDITION, Codec.encode(_addition));
     }
 
     /** Save _removal for persistence.
      */
     public void saveRemoval() throws IOException {
-        if (!_REMOVAL.exists()) {
-            _REMOVAL.createNewFile();
-        }
-        Utils.writeObject(_REMOVAL, _removal);
-    }
-
-    /** Save _tracked for persistence.
-     */
-    public void saveTracked() throws IOException {
-        if (!_TRACKED.exists()) {
-            _TRACKED.createNewFile();
-        }
-        Utils.writeObject(_TRACKED, _tracked);
+        _txn.write(_REMOVAL, Codec.encode(_removal));
     }
 
     /** Load _addition, _removal, and _tracked.
@@ -979,10 +1154,10 @@ public class Gitlet {
      * @throws IOException
      */
     public void loadAddition() {
-        if (!_ADDITION.exists()) {
+        if (!_txn.exists(_ADDITION)) {
             _addition = new GitMap();
         } else {
-            _addition = Utils.readObject(_ADDITION, GitMap.class);
+            _addition = Codec.decode(readStaged(_ADDITION), GitMap.class);
         }
     }
 
@@ -990,25 +1165,59 @@ public class Gitlet {
      * @throws IOException
      */
     public void loadRemoval() {
-        if (!_REMOVAL.exists()) {
+        if (!_txn.exists(_REMOVAL)) {
             _removal = new GitArray();
         } else {
-            _removal = Utils.readObject(_REMOVAL, GitArray.class);
+            _removal = Codec.decode(readStaged(_REMOVAL), GitArray.class);
         }
     }
 
-    /** Load _tracked for persistence.
-     * @throws IOException
+    /** Read a staging file, reusing what this process last read or
+     * wrote if the file has not been replaced since.
+     * @param file is the staging file, which must exist.
+     * @return its contents, as this command sees them.
      */
-    public void loadTracked() {
-        if (!_TRACKED.exists()) {
-            _tracked = new GitMap();
-        } else {
-            _tracked = Utils.readObject(_TRACKED, GitMap.class);
+    public byte[] readStaged(File file) {
+        if (_txn.pending(file)) {
+            return _txn.read(file);
+        }
+        Object version = version(file);
+        if (version != null && version.equals(_stagedVersions.get(file))) {
+            return _stagedBytes.get(file);
+        }
+        byte[] bytes = _txn.read(file);
+        _stagedVersions.put(file, version);
+        _stagedBytes.put(file, bytes);
+        return bytes;
+    }
 
+    /** Identify the version of a file on disk.  Staging files are only
+     * ever replaced by renaming a new file over them, so a new version is
+     * a new file.
+     * @param file is the file.
+     * @return its file key, modification time and size, or null if the
+     * system cannot tell files apart.
+     */
+    public static Object version(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            if (attrs.fileKey() == null) {
+                return null;
+            }
+            return Arrays.asList(attrs.fileKey(), attrs.lastModifiedTime(),
+                    attrs.size());
+        } catch (IOException excp) {
+            return null;
         }
     }
 
+    /** Load _tracked, the files of the head commit.
+     */
+    public void loadTracked() {
+        _tracked = getHeadCommit().getBlobs();
+    }
+
     /** GitMap of the addition staging area.
      * Map of the name of the files staged for addition
      * and the id of their blobs.
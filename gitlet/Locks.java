@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The locks on repositories held by one command.  Each lock is an
+ *  operating-system lock, taken with FileChannel.lock, on the whole of a
+ *  lock file in a .gitlet directory, so it protects against other
+ *  processes and is dropped when the process dies.  Any number of
+ *  commands may hold a lock shared, to read what it protects, or one
+ *  command may hold it exclusively, to change it.  Locks are held until
+ *  released together when the command has finished.
+ *
+ *  So that commands waiting for each other cannot deadlock, even across
+ *  repositories that push to and fetch from each other, a command only
+ *  ever waits for a lock that comes after every lock it holds, in the
+ *  order of the lock files' canonical paths.  Within a repository that
+ *  is the order OBJECTS, REFS, STAGING.  A lock that comes before one
+ *  already held, as a remote's may, is tried without waiting; if it is
+ *  taken, or if a shared lock is wanted exclusive, the command instead
+ *  releases all its locks and waits for each again in order.  What they
+ *  protect may have changed in the meantime, which lock reports, so a
+ *  command must take the locks it needs before writing anything.
+ *  @author Jinho Shin
+ */
+class Locks {
+
+    /** The lock on the object store.  Commands that delete objects hold
+     *  it exclusively; every other command holds it shared, since new
+     *  objects are written atomically and never change. */
+    static final String OBJECTS = "objects.lock";
+
+    /** The lock on the head, the branches and the remotes. */
+    static final String REFS = "refs.lock";
+
+    /** The lock on the staging area. */
+    static final String STAGING = "staging.lock";
+
+    /** Take lock NAME of the repository whose .gitlet directory is
+     *  GITLET, shared if SHARED and otherwise exclusive, waiting as long
+     *  as it takes.  A lock already held is kept if strong enough.
+     *  Return true iff the locks held had to be released and taken
+     *  again, so that anything read under them must be read again. */
+    boolean lock(File gitlet, String name, boolean shared)
+            throws IOException {
+        File file = new File(gitlet, name).getCanonicalFile();
+        FileLock held = _held.get(file);
+        if (held != null && (shared || !held.isShared())) {
+            return false;
+        }
+        if (held == null) {
+            if (_held.isEmpty() || _held.lastKey().compareTo(file) < 0) {
+                _held.put(file, take(file, shared, true));
+                return false;
+            }
+            FileLock lock = take(file, shared, false);
+            if (lock != null) {
+                _held.put(file, lock);
+                return false;
+            }
+        }
+        TreeMap<File, Boolean> wanted = new TreeMap<>();
+        for (Map.Entry<File, FileLock> e : _held.entrySet()) {
+            wanted.put(e.getKey(), e.getValue().isShared());
+        }
+        wanted.put(file, shared);
+        release();
+        for (Map.Entry<File, Boolean> e : wanted.entrySet()) {
+            _held.put(e.getKey(), take(e.getKey(), e.getValue(), true));
+        }
+        return true;
+    }
+
+    /** Release every lock held. */
+    void release() throws IOException {
+        try {
+            for (FileLock held : _held.values()) {
+                held.channel().close();
+            }
+        } finally {
+            _held.clear();
+        }
+    }
+
+    /** Return a lock on the whole of FILE, shared if SHARED and
+     *  otherwise exclusive, waiting for it if WAIT and otherwise
+     *  returning null if another process holds it. */
+    private static FileLock take(File file, boolean shared, boolean wait)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock = wait ? channel.lock(0, Long.MAX_VALUE, shared)
+                : channel.tryLock(0, Long.MAX_VALUE, shared);
+            if (lock == null) {
+                channel.close();
+            }
+            return lock;
+        } catch (IOException | RuntimeException excp) {
+            channel.close();
+            throw excp;
+        }
+    }
+
+    /** The locks held, by lock file, in the order they are taken. */
+    private final TreeMap<File, FileLock> _held = new TreeMap<>();
+}
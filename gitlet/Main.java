@@ -2,6 +2,9 @@ package gitlet;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Arrays;
+
+import jdk.jfr.Recording;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Jinho Shin
@@ -10,10 +13,71 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException, ParseException {
-        Gitlet G = new Gitlet();
+        try {
+            run(new Gitlet(), args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        System.exit(0);
+    }
+
+    /** Run the command in ARGS against G, printing its output.  Errors
+     *  are thrown as GitletExceptions carrying the message to print.  The
+     *  command's writes take effect together when it finishes, and not
+     *  at all if it fails, and it holds the locks it needs throughout.
+     *  With the option --trace before the command, a trace of the
+     *  command is printed to the standard error when it finishes, and
+     *  with --events, the command's flight recorder events. */
+    static void run(Gitlet G, String... args)
+            throws IOException, ParseException {
+        if (args.length > 0 && args[0].equals(Events.OPTION)) {
+            Recording recording = Events.record();
+            try {
+                run(G, Arrays.copyOfRange(args, 1, args.length));
+            } finally {
+                Events.report(recording, System.err);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals(Trace.OPTION)) {
+            String[] command = command(args);
+            Trace trace = new Trace(command.length == 0 ? "" : command[0]);
+            boolean ok = false;
+            try {
+                run(G, Arrays.copyOfRange(args, 1, args.length));
+                ok = true;
+            } finally {
+                System.err.println(trace.report(ok));
+            }
+            return;
+        }
+        G.begin(args.length == 0 ? "" : args[0]);
+        boolean ok = false;
+        try {
+            dispatch(G, args);
+            ok = true;
+        } finally {
+            G.end(ok);
+        }
+    }
+
+    /** Return the arguments of the command in ARGS, without the
+     *  options --trace and --events. */
+    static String[] command(String... args) {
+        int first = 0;
+        while (first < args.length
+               && (args[first].equals(Trace.OPTION)
+                   || args[first].equals(Events.OPTION))) {
+            first += 1;
+        }
+        return Arrays.copyOfRange(args, first, args.length);
+    }
+
+    /** Run the command in ARGS against G. */
+    private static void dispatch(Gitlet G, String... args)
+            throws IOException, ParseException {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         } else if (args[0].equals("init")) {
             G.init(args);
         } else if (args[0].equals("add")) {
@@ -50,10 +114,19 @@ public class Main {
             G.fetch(args);
         } else if (args[0].equals("pull")) {
             G.pull(args);
+        } else if (args[0].equals("diff")) {
+            G.diff(args);
+        } else if (args[0].equals("repack")) {
+            G.repack(args);
+        } else if (args[0].equals("gc")) {
+            G.gc(args);
+        } else if (args[0].equals("batch")) {
+            G.batch(args);
+        } else if (args[0].equals("daemon")) {
+            G.daemon(args);
         } else {
-            System.out.println("No command with that name exists.");
+            throw Utils.error("No command with that name exists.");
         }
-        System.exit(0);
     }
 }
 
@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/** An index from commit messages to commit ids, so that find never has
+ *  to read a commit.  It is kept in .gitlet/messages as an append-only
+ *  log of (id, message) records, one per commit, that is extended
+ *  whenever commits are added to the repository, and in
+ *  .gitlet/messages.words, a table of postings listing, for each word
+ *  in the messages, the offsets in the log of the records containing
+ *  it.  The table's words are sorted, so a word is looked up by binary
+ *  search in the mapped file, and only the records it lists are read.
+ *
+ *  The table covers the log up to some length; records appended since
+ *  are read whole by every search.  Once they make up more than a
+ *  quarter of the log, adding commits rewrites the table, to a
+ *  temporary file renamed into place, so the cost of keeping it is
+ *  constant per commit on average; repack brings it fully up to date.
+ *  The log starts with a random stamp, repeated in the table, so that a
+ *  table left from a log since rebuilt is ignored.
+ *
+ *  Each record ends with a CRC-32 of the rest of it.  Records are read
+ *  only up to the first one that is cut short or fails its checksum,
+ *  as a record torn by a crash while it was appended will; the next
+ *  add truncates the log there before appending, and a log found to
+ *  hold fewer records than there are commits is rebuilt.
+ *  @author Jinho Shin
+ */
+class MessageIndex {
+
+    /** The message index stored in .gitlet directory GITLET, describing
+     *  the commits in STORE. */
+    MessageIndex(File gitlet, ObjectStore store) {
+        _file = new File(gitlet, "messages");
+        _wordsFile = new File(gitlet, "messages.words");
+        _store = store;
+    }
+
+    /** Return the ids of the commits whose message is exactly MSG, in the
+     *  order they were added. */
+    List<String> exact(String msg) {
+        return find(words(msg), msg::equals);
+    }
+
+    /** Return the ids of the commits whose message contains TEXT.  Only
+     *  the words inside TEXT are whole words of the message, so only
+     *  they are looked up. */
+    List<String> containing(String text) {
+        List<String> words = words(text);
+        if (words.size() > 2) {
+            words = words.subList(1, words.size() - 1);
+        } else {
+            words = new ArrayList<>();
+        }
+        return find(words, msg -> msg.contains(text));
+    }
+
+    /** Return the ids of the commits whose message contains every word
+     *  in TEXT, ignoring case. */
+    List<String> matchingWords(String text) {
+        List<String> words = words(text);
+        return find(words, msg -> new HashSet<>(words(msg))
+                    .containsAll(words));
+    }
+
+    /** Add COMMITS to the index, rewriting the table if the records it
+     *  does not cover have grown too many. */
+    void add(List<Commit> commits) {
+        if (!_file.isFile() || stamp(_file) == 0) {
+            rebuild();
+            return;
+        }
+        truncate();
+        append(_file, commits, 0);
+        long length = _file.length();
+        long covered = covered();
+        if (length - covered > Math.max(MERGE_MIN, covered / 4)) {
+            index();
+        }
+    }
+
+    /** Bring the table up to date with the whole log. */
+    void compact() {
+        if (_file.isFile() && covered() < _file.length()) {
+            index();
+        }
+    }
+
+    /** Rebuild the log and the table from every commit in the store. */
+    void rebuild() {
+        List<Commit> commits = new ArrayList<>();
+        for (String id : _store.commitIDs()) {
+            commits.add(_store.readCommit(id));
+        }
+        File temp = new File(_file.getPath() + ".tmp"
+                + ProcessHandle.current().pid());
+        temp.delete();
+        append(temp, commits, ThreadLocalRandom.current().nextLong() | 1);
+        install(temp, _file);
+        index();
+    }
+
+    /** Append records for COMMITS to the log in FILE, starting it with
+     *  the stamp STAMP if needed. */
+    private static void append(File file, List<Commit> commits,
+                               long stamp) {
+        boolean fresh = !file.isFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp);
+            }
+            for (Commit c : commits) {
+                byte[] msg = c.getMessage().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer record =
+                    ByteBuffer.allocate(RECORD_HEADER + msg.length);
+                record.put(Pack.toBytes(c.getSha()));
+                record.putInt(msg.length);
+                record.put(msg);
+                CRC32 crc = new CRC32();
+                crc.update(record.array());
+                out.write(record.array());
+                out.writeInt((int) crc.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cut off the log after its last whole record, dropping whatever a
+     *  crash left of the one after it. */
+    private void truncate() {
+        ByteBuffer log = map(_file);
+        long covered = covered();
+        int off = covered > 0 && covered <= log.limit()
+            ? (int) covered : LOG_HEADER;
+        for (int end = next(log, off); end > 0; end = next(log, off)) {
+            off = end;
+        }
+        if (off < log.limit()) {
+            try (RandomAccessFile raf = new RandomAccessFile(_file, "rw")) {
+                raf.setLength(off);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Rewrite the table from the whole log. */
+    private void index() {
+        ByteBuffer log = map(_file);
+        TreeMap<String, List<Long>> postings = new TreeMap<>();
+        int count = 0;
+        for (int off = LOG_HEADER, end = next(log, off); end > 0;
+             off = end, end = next(log, off)) {
+            for (String w : new LinkedHashSet<>(words(message(log, off)))) {
+                postings.computeIfAbsent(w, k -> new ArrayList<>())
+                    .add((long) off);
+            }
+            count += 1;
+        }
+        File temp = new File(_wordsFile.getPath() + ".tmp"
+                + ProcessHandle.current().pid());
+        temp.delete();
+        List<byte[]> words = new ArrayList<>();
+        for (String w : postings.keySet()) {
+            words.add(w.getBytes(StandardCharsets.UTF_8));
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        temp.toPath())))) {
+            out.writeInt(WORDS_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(log.getLong(8));
+            out.writeLong(log.limit());
+            out.writeInt(count);
+            out.writeInt(words.size());
+            int wordAt = WORDS_HEADER + words.size() * ENTRY;
+            int postingAt = wordAt;
+            for (byte[] w : words) {
+                postingAt += w.length;
+            }
+            int i = 0;
+            for (List<Long> offsets : postings.values()) {
+                out.writeInt(wordAt);
+                out.writeInt(words.get(i).length);
+                out.writeInt(postingAt);
+                out.writeInt(offsets.size());
+                wordAt += words.get(i).length;
+                postingAt += offsets.size() * 8;
+                i += 1;
+            }
+            for (byte[] w : words) {
+                out.write(w);
+            }
+            for (List<Long> offsets : postings.values()) {
+                for (long off : offsets) {
+                    out.writeLong(off);
+                }
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(temp, _wordsFile);
+    }
+
+    /** Return the ids of the commits whose message passes TEST, grouped
+     *  by message in the order the messages were first added, looking
+     *  only at the records of the table that contain all of WORDS, and
+     *  at all of them if there are none, as well as at every record the
+     *  table does not cover. */
+    private List<String> find(List<String> words, Predicate<String> test) {
+        ByteBuffer log = load();
+        ByteBuffer table = table(log);
+        LinkedHashMap<String, Set<String>> found = new LinkedHashMap<>();
+        int covered = LOG_HEADER;
+        if (table != null) {
+            covered = (int) Math.min(table.getLong(16), log.limit());
+            if (words.isEmpty()) {
+                for (int off = LOG_HEADER; off >= LOG_HEADER && off < covered;
+                     off = next(log, off)) {
+                    visit(log, off, test, found);
+                }
+            } else {
+                for (long off : postings(table, words)) {
+                    if (off < covered) {
+                        visit(log, (int) off, test, found);
+                    }
+                }
+            }
+        }
+        for (int off = covered, end = next(log, off); end > 0;
+             off = end, end = next(log, off)) {
+            visit(log, off, test, found);
+        }
+        List<String> result = new ArrayList<>();
+        for (Set<String> ids : found.values()) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+
+    /** Add the id of the record at OFF in LOG to FOUND, under its
+     *  message, if the message passes TEST. */
+    private static void visit(ByteBuffer log, int off,
+                              Predicate<String> test,
+                              Map<String, Set<String>> found) {
+        String msg = message(log, off);
+        if (test.test(msg)) {
+            found.computeIfAbsent(msg, k -> new LinkedHashSet<>())
+                .add(Pack.toHex(log, off));
+        }
+    }
+
+    /** Return the offsets in the log, in order, of the records that
+     *  TABLE lists under every one of WORDS. */
+    private static TreeSet<Long> postings(ByteBuffer table,
+                                          List<String> words) {
+        TreeSet<Long> result = null;
+        for (String word : new LinkedHashSet<>(words)) {
+            TreeSet<Long> offsets = new TreeSet<>();
+            int entry = lookup(table, word);
+            if (entry >= 0) {
+                int at = table.getInt(entry + 8);
+                for (int i = 0; i < table.getInt(entry + 12); i += 1) {
+                    offsets.add(table.getLong(at + 8 * i));
+                }
+            }
+            if (result == null) {
+                result = offsets;
+            } else {
+                result.retainAll(offsets);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new TreeSet<>() : result;
+    }
+
+    /** Return the offset in TABLE of the entry for WORD, or -1 if there
+     *  is none. */
+    private static int lookup(ByteBuffer table, String word) {
+        int lo = 0, hi = table.getInt(28) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = WORDS_HEADER + mid * ENTRY;
+            byte[] w = new byte[table.getInt(entry + 4)];
+            table.get(table.getInt(entry), w);
+            int c = new String(w, StandardCharsets.UTF_8).compareTo(word);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the mapped log, first rebuilding the index if the log is
+     *  missing, of an older layout, or knows of fewer commits than the
+     *  commit graph. */
+    private ByteBuffer load() {
+        if (!_file.isFile() || stamp(_file) == 0) {
+            rebuild();
+        }
+        ByteBuffer log = map(_file);
+        ByteBuffer table = table(log);
+        int count = 0;
+        int off = LOG_HEADER;
+        if (table != null && table.getLong(16) <= log.limit()) {
+            count = table.getInt(24);
+            off = (int) table.getLong(16);
+        }
+        for (int end = next(log, off); end > 0; end = next(log, off)) {
+            off = end;
+            count += 1;
+        }
+        if (count < _store.graph().size()) {
+            rebuild();
+            log = map(_file);
+        }
+        return log;
+    }
+
+    /** Return the mapped table, or null if there is none for LOG. */
+    private ByteBuffer table(ByteBuffer log) {
+        if (!_wordsFile.isFile() || stamp(_wordsFile) != log.getLong(8)) {
+            return null;
+        }
+        ByteBuffer table = map(_wordsFile);
+        if (table.limit() < WORDS_HEADER || table.getInt(0) != WORDS_MAGIC
+                || table.getLong(8) != log.getLong(8)) {
+            return null;
+        }
+        return table;
+    }
+
+    /** Return the length of the log the table covers, or 0 if there is
+     *  no table for the log. */
+    private long covered() {
+        long stamp = stamp(_file);
+        if (stamp == 0 || stamp(_wordsFile) != stamp) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_wordsFile, "r")) {
+            raf.seek(16);
+            return raf.readLong();
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the stamp of FILE, a log or a table, or 0 if it is missing
+     *  or of another version. */
+    private static long stamp(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < LOG_HEADER) {
+                return 0;
+            }
+            raf.seek(4);
+            return raf.readInt() == VERSION ? raf.readLong() : 0;
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the offset of the record after the one at OFF in LOG, or
+     *  -1 if there is no whole record at OFF that passes its checksum. */
+    private static int next(ByteBuffer log, int off) {
+        if (off < LOG_HEADER || off + RECORD_HEADER > log.limit()) {
+            return -1;
+        }
+        int length = log.getInt(off + ID_BYTES);
+        if (length < 0
+            || length > log.limit() - off - RECORD_HEADER - CHECKSUM_BYTES) {
+            return -1;
+        }
+        int end = off + RECORD_HEADER + length;
+        CRC32 crc = new CRC32();
+        crc.update(log.duplicate().position(off).limit(end));
+        return (int) crc.getValue() == log.getInt(end)
+            ? end + CHECKSUM_BYTES : -1;
+    }
+
+    /** Return the message of the record at OFF in LOG. */
+    private static String message(ByteBuffer log, int off) {
+        byte[] msg = new byte[log.getInt(off + ID_BYTES)];
+        log.get(off + RECORD_HEADER, msg);
+        return new String(msg, StandardCharsets.UTF_8);
+    }
+
+    /** Return the contents of FILE, mapped. */
+    private static ByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Move the finished TEMP into its final place FILE. */
+    private static void install(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the words of TEXT: maximal runs of letters and digits, in
+     *  lower case. */
+    static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (String w : lower.split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /** Magic number at the start of the log ("GMSG"). */
+    private static final int MAGIC = 0x474d5347;
+
+    /** Magic number at the start of the table ("GMWD"). */
+    private static final int WORDS_MAGIC = 0x474d5744;
+
+    /** Version of the layout of both files.  Version 2 added the stamp
+     *  and the table, and version 3 the records' checksums. */
+    private static final int VERSION = 3;
+
+    /** Bytes in the log's header: magic, version and stamp. */
+    private static final int LOG_HEADER = 16;
+
+    /** Bytes in the table's header: magic, version, the log's stamp, the
+     *  length of the log covered, the number of records in it and the
+     *  number of words. */
+    private static final int WORDS_HEADER = 32;
+
+    /** Bytes in each word's entry in the table: the offset and length of
+     *  the word, and the offset and number of its postings. */
+    private static final int ENTRY = 16;
+
+    /** Bytes in a commit id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes in a record before its message: the id and the length. */
+    private static final int RECORD_HEADER = ID_BYTES + 4;
+
+    /** Bytes in the checksum after a record's message. */
+    private static final int CHECKSUM_BYTES = 4;
+
+    /** Bytes of records the table may leave uncovered in any case. */
+    private static final long MERGE_MIN = 1 << 16;
+
+    /** The log file. */
+    private final File _file;
+
+    /** The table of postings. */
+    private final File _wordsFile;
+
+    /** The object store holding the commits. */
+    private final ObjectStore _store;
+}
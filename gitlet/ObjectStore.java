@@ -0,0 +1,1110 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The blobs, trees and commits of one repository.  An object is either
+ *  loose, in its own file under .blobs, .trees or .commits, or packed
+ *  into one of the pack files under .packs.  Loose objects are looked up
+ *  first, so an object may safely be in both places while a repack is
+ *  running.
+ *
+ *  Blobs are stored deflated behind a short marker and are read and
+ *  written as streams, so a blob never has to fit in memory.  Blobs
+ *  written before compression was added have no marker and are read
+ *  back as they are.  Copying an object to another store moves its
+ *  stored bytes without decoding them.
+ *
+ *  When packing, each blob is tried as a delta against the few blobs
+ *  packed just before it, which are ordered so that versions of the same
+ *  file, and files of similar size, come together.  Chains of deltas are
+ *  at most MAX_CHAIN long, so reading a blob applies at most that many
+ *  deltas.
+ *
+ *  A blob's id is the SHA-1 hash of its contents alone.  Blobs stored
+ *  when ids also covered the file name keep their old ids, since commits
+ *  refer to them; the first time a store is used, it hashes those blobs
+ *  and records each old id with its content id in .gitlet/blob-aliases,
+ *  so that ids can still be compared without reading blobs.
+ *  @author Jinho Shin
+ */
+class ObjectStore {
+
+    /** The object store of the repository whose .gitlet directory
+     *  is GITLET. */
+    ObjectStore(File gitlet) {
+        _gitlet = gitlet;
+        _blobs = new File(gitlet, ".blobs");
+        _commits = new File(gitlet, ".commits");
+        _trees = new File(gitlet, ".trees");
+        _packDir = new File(gitlet, ".packs");
+        _aliasFile = new File(gitlet, "blob-aliases");
+    }
+
+    /** Record the objects written from now on in TXN, which syncs them
+     *  before committing, or stop recording them if TXN is null. */
+    void join(Transaction txn) {
+        _txn = txn;
+    }
+
+    /** Return the id of the contents of blob ID, which is ID itself
+     *  unless the blob was stored under an old, name-dependent id.  Two
+     *  blobs have the same contents iff their content ids are equal.
+     *  Returns null if ID is null. */
+    String contentID(String id) {
+        return id == null ? null : aliases().getOrDefault(id, id);
+    }
+
+    /** Return the content ids of blobs stored under old ids, by old id,
+     *  hashing the blobs to build the alias file if there is none. */
+    private synchronized Map<String, String> aliases() {
+        if (_aliases != null) {
+            return _aliases;
+        }
+        _aliases = new HashMap<>();
+        _aliasesRead = _aliasFile.length();
+        if (_aliasFile.isFile()) {
+            String[] words =
+                Utils.readContentsAsString(_aliasFile).split("\\s+");
+            for (int i = 0; i + 1 < words.length; i += 2) {
+                _aliases.put(words[i], words[i + 1]);
+            }
+            return _aliases;
+        }
+        packs();
+        List<String> ids = blobIDs();
+        List<String> hashed = Workers.map(ids, id -> {
+            try (InputStream in = openBlob(id)) {
+                return Utils.sha1(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ids.size(); i += 1) {
+            if (!ids.get(i).equals(hashed.get(i))) {
+                _aliases.put(ids.get(i), hashed.get(i));
+                text.append(ids.get(i)).append(' ').append(hashed.get(i))
+                    .append('\n');
+            }
+        }
+        File temp = tempFile(_gitlet, _aliasFile.getName());
+        try {
+            Utils.writeContents(temp, text.toString());
+            install(temp, _aliasFile);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return _aliases;
+    }
+
+    /** Record that blob ID, stored under an old id, has content id
+     *  CONTENT. */
+    private synchronized void addAlias(String id, String content) {
+        if (content.equals(aliases().put(id, content))) {
+            return;
+        }
+        try {
+            Files.writeString(_aliasFile.toPath(), id + " " + content + "\n",
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the ids of all blobs, loose or packed. */
+    private List<String> blobIDs() {
+        Set<String> result = new HashSet<>();
+        List<String> loose = Utils.plainFilenamesIn(_blobs);
+        for (String name : loose == null ? List.<String>of() : loose) {
+            if (Pack.isID(name)) {
+                result.add(name);
+            }
+        }
+        for (Pack p : packs()) {
+            result.addAll(p.ids(Pack.BLOB));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return true iff the blob ID exists. */
+    boolean hasBlob(String id) {
+        return has(_blobs, Pack.BLOB, id);
+    }
+
+    /** Return a stream over the contents of blob ID. */
+    InputStream openBlob(String id) {
+        if (!new File(_blobs, id).isFile()) {
+            for (Pack p : packs()) {
+                int rec = p.find(id);
+                if (rec >= 0 && p.type(rec) == Pack.BLOB && p.isDelta(rec)) {
+                    return new ByteArrayInputStream(undelta(p, rec));
+                }
+            }
+        }
+        try {
+            return contents(openStored(_blobs, Pack.BLOB, id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream over the contents of a blob whose stored bytes
+     *  are STORED. */
+    private static InputStream contents(InputStream stored) {
+        try {
+            InputStream in = new BufferedInputStream(stored);
+            in.mark(DEFLATED.length);
+            if (Arrays.equals(in.readNBytes(DEFLATED.length), DEFLATED)) {
+                return new InflaterInputStream(in);
+            }
+            in.reset();
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of delta record REC of pack P. */
+    private byte[] undelta(Pack p, int rec) {
+        int base = p.find(p.base(rec));
+        if (base < 0) {
+            throw new IllegalArgumentException("missing delta base");
+        }
+        byte[] contents;
+        if (p.isDelta(base)) {
+            contents = undelta(p, base);
+        } else {
+            try (InputStream in = contents(Trace.counted(p.open(base)))) {
+                contents = in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        byte[] delta = p.delta(rec);
+        Trace.read(delta.length);
+        return Delta.apply(contents, delta);
+    }
+
+    /** Return the contents of blob ID. */
+    byte[] readBlob(String id) {
+        Events.BlobRead event = Events.blobRead();
+        try (InputStream in = openBlob(id)) {
+            byte[] contents = in.readAllBytes();
+            Events.end(event, id, contents.length);
+            return contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of blob ID to TARGET, replacing it. */
+    void extractBlob(String id, File target) {
+        Events.BlobRead event = Events.blobRead();
+        try (InputStream in = openBlob(id)) {
+            long size = Files.copy(in, target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Events.end(event, id, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store CONTENTS as blob ID, unless it is already present. */
+    void writeBlob(String id, byte[] contents) {
+        writeBlob(id, new ByteArrayInputStream(contents));
+    }
+
+    /** Store the contents of SOURCE as blob ID, unless it is already
+     *  present. */
+    void writeBlob(String id, File source) {
+        try (InputStream in = new FileInputStream(source)) {
+            Trace.opened();
+            writeBlob(id, Trace.counted(in));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store everything left in IN as blob ID, deflated, unless it is
+     *  already present. */
+    private void writeBlob(String id, InputStream in) {
+        if (hasBlob(id)) {
+            return;
+        }
+        Events.BlobWrite event = Events.blobWrite();
+        File temp = tempFile(_blobs, id);
+        try {
+            long size;
+            try (OutputStream out = new BufferedOutputStream(Trace.counted(
+                    Files.newOutputStream(temp.toPath())))) {
+                Trace.opened();
+                out.write(DEFLATED);
+                DeflaterOutputStream deflated = new DeflaterOutputStream(out);
+                size = in.transferTo(deflated);
+                deflated.finish();
+            }
+            install(temp, new File(_blobs, id));
+            Events.end(event, id, size);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff the commit ID exists. */
+    boolean hasCommit(String id) {
+        return has(_commits, Pack.COMMIT, id);
+    }
+
+    /** Return commit ID.  Commits never change once written, so recently
+     *  read ones are kept in memory. */
+    Commit readCommit(String id) {
+        Commit com = _commitCache.get(id);
+        if (com == null) {
+            Events.CommitRead event = Events.commitRead();
+            byte[] stored = read(_commits, Pack.COMMIT, id);
+            com = Codec.decode(stored, Commit.class);
+            Events.end(event, id, stored.length);
+            com.setStore(this);
+            _commitCache.put(id, com);
+        }
+        return com;
+    }
+
+    /** Store the commit COM and index it. */
+    void writeCommit(Commit com) {
+        com.setStore(this);
+        Events.CommitWrite event = Events.commitWrite();
+        File temp = tempFile(_commits, com.getSha());
+        try {
+            byte[] stored = Codec.encode(com);
+            Utils.writeContents(temp, stored);
+            install(temp, new File(_commits, com.getSha()));
+            Events.end(event, com.getSha(), stored.length);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        indexCommits(Collections.singletonList(com));
+    }
+
+    /** Return true iff the tree ID exists. */
+    boolean hasTree(String id) {
+        return has(_trees, Pack.TREE, id);
+    }
+
+    /** Return tree ID.  Like commits, recently read trees are kept in
+     *  memory. */
+    Tree readTree(String id) {
+        Tree tree = _treeCache.get(id);
+        if (tree == null) {
+            tree = Codec.decode(read(_trees, Pack.TREE, id), Tree.class);
+            _treeCache.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Store TREE, unless it is already present, and return its id. */
+    String writeTree(Tree tree) {
+        String id = tree.id();
+        if (_treeCache.containsKey(id) || hasTree(id)) {
+            return id;
+        }
+        _trees.mkdir();
+        File temp = tempFile(_trees, id);
+        try {
+            Codec.write(temp, tree);
+            install(temp, new File(_trees, id));
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _treeCache.put(id, tree);
+        return id;
+    }
+
+    /** Add COMMITS, which are already stored, to the commit graph and
+     *  the message index. */
+    void indexCommits(List<Commit> commits) {
+        graph().add(commits);
+        messages().add(commits);
+    }
+
+    /** Return the commit graph of this store. */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(_gitlet, this);
+        }
+        return _graph;
+    }
+
+    /** Return the message index of this store. */
+    MessageIndex messages() {
+        if (_messages == null) {
+            _messages = new MessageIndex(_gitlet, this);
+        }
+        return _messages;
+    }
+
+    /** Drop whatever this store has cached about files that another
+     *  process may since have changed: the list of packs, the aliases
+     *  and the commit graph.  Cached commits are kept, since
+     *  commits never change. */
+    void refresh() {
+        if (_packs != null && _packDir.lastModified() != _packsListed) {
+            _packs = null;
+        }
+        if (_aliases != null && _aliasFile.length() != _aliasesRead) {
+            _aliases = null;
+        }
+        if (_graph != null) {
+            _graph.refresh();
+        }
+    }
+
+    /** Return the IDs of all commits, loose or packed. */
+    List<String> commitIDs() {
+        List<String> result = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(_commits)) {
+            if (Pack.isID(name)) {
+                result.add(name);
+            }
+        }
+        for (Pack p : packs()) {
+            for (String id : p.ids(Pack.COMMIT)) {
+                if (!new File(_commits, id).exists()) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Send BLOBS, TREES and COMMITS, none of which TARGET has, from
+     *  this store to TARGET in one batch: a new pack in TARGET, which is
+     *  complete before its index appears, so that TARGET gets all of them
+     *  or none.  A blob packed here as a delta stays one if its base is
+     *  sent in the same pack, and is sent whole otherwise; old blob ids
+     *  take their aliases along.  A batch too large for one pack is split,
+     *  the commits coming last, and an object too large for any pack is
+     *  copied loose.
+     *
+     *  A pack of this store whose objects are all being sent, or are in
+     *  TARGET already, is hard linked into TARGET instead, when the two
+     *  stores are on the same file system; its index is linked only after
+     *  the rest of the batch is written. */
+    void send(Collection<String> blobs, Collection<String> trees,
+              List<Commit> commits, ObjectStore target) throws IOException {
+        Set<String> sending = new HashSet<>(blobs);
+        sending.addAll(trees);
+        for (Commit com : commits) {
+            sending.add(com.getSha());
+        }
+        List<Pack> linked = new ArrayList<>();
+        for (Pack p : packs()) {
+            if (within(p, sending, target) && target.linkData(p)) {
+                linked.add(p);
+                for (int rec = 0; rec < p.size(); rec += 1) {
+                    sending.remove(p.id(rec));
+                }
+            }
+        }
+        Batch batch = new Batch(target);
+        for (String id : baseFirst(blobs)) {
+            String content = contentID(id);
+            if (!content.equals(id)) {
+                target.addAlias(id, content);
+            }
+            if (sending.contains(id)) {
+                send(_blobs, Pack.BLOB, id, batch);
+            }
+        }
+        for (String id : trees) {
+            if (sending.contains(id)) {
+                send(_trees, Pack.TREE, id, batch);
+            }
+        }
+        for (Commit com : commits) {
+            if (sending.contains(com.getSha())) {
+                send(_commits, Pack.COMMIT, com.getSha(), batch);
+            }
+        }
+        batch.flush();
+        for (Pack p : linked) {
+            target.linkIndex(p);
+        }
+    }
+
+    /** Return true iff some object in P is among IDS and every other
+     *  one is in TARGET already. */
+    private static boolean within(Pack p, Set<String> ids,
+                                  ObjectStore target) {
+        boolean any = false;
+        for (int rec = 0; rec < p.size(); rec += 1) {
+            String id = p.id(rec);
+            if (ids.contains(id)) {
+                any = true;
+            } else if (!target.has(target.dir(p.type(rec)), p.type(rec),
+                                   id)) {
+                return false;
+            }
+        }
+        return any;
+    }
+
+    /** Hard link the pack file of P, from another store, into this
+     *  store, and return true, or return false if that is not possible,
+     *  as when the stores are on different file systems. */
+    private boolean linkData(Pack p) {
+        _packDir.mkdir();
+        try {
+            File data = new File(_packDir, p.dataFile().getName());
+            Files.createLink(data.toPath(), p.dataFile().toPath());
+            written(data);
+            return true;
+        } catch (IOException | UnsupportedOperationException excp) {
+            return false;
+        }
+    }
+
+    /** Install the index of P, from another store, whose pack file has
+     *  been linked into this store, making its objects visible. */
+    private void linkIndex(Pack p) throws IOException {
+        File index = new File(_packDir, p.indexFile().getName());
+        try {
+            Files.createLink(index.toPath(), p.indexFile().toPath());
+            written(index);
+        } catch (IOException excp) {
+            File temp = tempFile(_packDir, index.getName());
+            Files.copy(p.indexFile().toPath(), temp.toPath());
+            install(temp, index);
+        }
+        if (_packs != null) {
+            _packs.add(new Pack(index));
+        }
+    }
+
+    /** Add object ID of type TYPE, loose in DIR or packed, to BATCH.  A
+     *  delta is added as one only if its base is in the pack it lands
+     *  in, which is checked after making room for it, and whole
+     *  otherwise. */
+    private void send(File dir, byte type, String id, Batch batch)
+            throws IOException {
+        File loose = new File(dir, id);
+        if (loose.isFile()) {
+            if (loose.length() < Pack.MAX_SIZE) {
+                batch.add(new Pack.Entry(id, type, loose), loose.length());
+            } else {
+                batch._target.linkLoose(type, loose);
+            }
+            return;
+        }
+        for (Pack p : packs()) {
+            int rec = p.find(id);
+            if (rec < 0 || p.type(rec) != type) {
+                continue;
+            }
+            batch.room(p.length(rec));
+            if (!p.isDelta(rec) || batch.has(p.base(rec))) {
+                batch.add(new Pack.Entry(id, type,
+                        p.isDelta(rec) ? p.base(rec) : null, p.dataFile(),
+                        p.offset(rec), p.length(rec)), p.length(rec));
+            } else {
+                byte[] stored = deflate(undelta(p, rec));
+                batch.add(new Pack.Entry(id, type, stored), stored.length);
+            }
+            return;
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Put LOOSE, a loose object of type TYPE from another store, into
+     *  this store, as a hard link if possible and otherwise as a copy. */
+    private void linkLoose(byte type, File loose) throws IOException {
+        File dir = dir(type);
+        dir.mkdir();
+        File temp = tempFile(dir, loose.getName());
+        try {
+            try {
+                Files.createLink(temp.toPath(), loose.toPath());
+            } catch (IOException | UnsupportedOperationException excp) {
+                try (FileChannel in = FileChannel.open(loose.toPath());
+                     FileChannel out = FileChannel.open(temp.toPath(),
+                         StandardOpenOption.CREATE_NEW,
+                         StandardOpenOption.WRITE)) {
+                    for (long done = 0; done < in.size();) {
+                        done += in.transferTo(done, in.size() - done, out);
+                    }
+                }
+            }
+            install(temp, new File(dir, loose.getName()));
+        } catch (IOException excp) {
+            temp.delete();
+            throw excp;
+        }
+    }
+
+    /** Return BLOBS in an order in which a blob packed here as a delta
+     *  comes after its base, when the base is among BLOBS too. */
+    private List<String> baseFirst(Collection<String> blobs) {
+        Set<String> wanted = new HashSet<>(blobs);
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String id : blobs) {
+            ArrayDeque<String> chain = new ArrayDeque<>();
+            for (String b = id; b != null && wanted.contains(b)
+                     && !result.contains(b); b = deltaBase(b)) {
+                chain.push(b);
+            }
+            result.addAll(chain);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the base of blob ID if it is packed as a delta, and
+     *  otherwise null. */
+    private String deltaBase(String id) {
+        if (new File(_blobs, id).isFile()) {
+            return null;
+        }
+        for (Pack p : packs()) {
+            int rec = p.find(id);
+            if (rec >= 0 && p.type(rec) == Pack.BLOB) {
+                return p.isDelta(rec) ? p.base(rec) : null;
+            }
+        }
+        return null;
+    }
+
+    /** Return CONTENTS as a loose blob stores them. */
+    private static byte[] deflate(byte[] contents) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(DEFLATED);
+        DeflaterOutputStream deflated = new DeflaterOutputStream(result);
+        deflated.write(contents);
+        deflated.finish();
+        return result.toByteArray();
+    }
+
+    /** Return the directory of loose objects of type TYPE. */
+    private File dir(byte type) {
+        return type == Pack.BLOB ? _blobs
+            : type == Pack.TREE ? _trees : _commits;
+    }
+
+    /** Objects on their way into a pack of another store. */
+    private static class Batch {
+        /** An empty batch for TARGET. */
+        Batch(ObjectStore target) {
+            _target = target;
+        }
+
+        /** Add E, of LENGTH stored bytes, writing out the objects added
+         *  so far first if the pack would grow too large. */
+        void add(Pack.Entry e, long length) throws IOException {
+            room(length);
+            _entries.add(e);
+            _ids.add(e.id());
+            _size += length;
+        }
+
+        /** Write out the objects added so far if LENGTH more stored
+         *  bytes would make the pack too large. */
+        void room(long length) throws IOException {
+            if (_size + length >= Pack.MAX_SIZE) {
+                flush();
+            }
+        }
+
+        /** Return true iff object ID is in the pack being filled. */
+        boolean has(String id) {
+            return _ids.contains(id);
+        }
+
+        /** Write the objects added so far into a new pack of the
+         *  target. */
+        void flush() throws IOException {
+            if (!_entries.isEmpty()) {
+                _target.addPack(_entries);
+            }
+            _entries.clear();
+            _ids.clear();
+            _size = 0;
+        }
+
+        /** The store receiving the objects. */
+        private final ObjectStore _target;
+        /** The objects for the pack being filled. */
+        private final List<Pack.Entry> _entries = new ArrayList<>();
+        /** The ids of those objects. */
+        private final Set<String> _ids = new HashSet<>();
+        /** The stored bytes of those objects. */
+        private long _size;
+    }
+
+    /** Return a fresh temporary file in DIR for object ID. */
+    private static File tempFile(File dir, String id) {
+        return new File(dir, id + ".tmp" + Thread.currentThread().getId()
+                + "-" + System.nanoTime());
+    }
+
+    /** Move the finished TEMP into its final place FILE. */
+    private void install(File temp, File file) throws IOException {
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        written(file);
+    }
+
+    /** Note that FILE was written, so that the transaction joined, if
+     *  any, syncs it. */
+    private void written(File file) {
+        Transaction txn = _txn;
+        if (txn != null) {
+            txn.created(file);
+        }
+    }
+
+    /** Sync everything written so far under the transaction joined, if
+     *  any, before deleting files whose contents it replaces. */
+    private void syncWritten() throws IOException {
+        Transaction txn = _txn;
+        if (txn != null) {
+            txn.sync();
+        }
+    }
+
+    /** Move every loose object into new packs and delete the loose
+     *  files.  Each pack is kept under Pack.MAX_SIZE; an object too
+     *  large for any pack stays loose.  Blobs are stored as deltas where
+     *  that saves at least half their size.  Commits still in Java
+     *  serialized form are converted to the Codec format first. */
+    void repack() throws IOException {
+        List<Pack.Entry> entries = new ArrayList<>();
+        List<File> packed = new ArrayList<>();
+        ArrayDeque<DeltaBase> window = new ArrayDeque<>();
+        long size = 0;
+        for (File dir : new File[] {_blobs, _trees, _commits}) {
+            byte type = dir == _blobs ? Pack.BLOB
+                : dir == _trees ? Pack.TREE : Pack.COMMIT;
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            if (type == Pack.BLOB) {
+                names = deltaOrder(names);
+            }
+            for (String name : names) {
+                File f = new File(dir, name);
+                if (!Pack.isID(name) || f.length() >= Pack.MAX_SIZE) {
+                    continue;
+                }
+                if (type == Pack.COMMIT) {
+                    byte[] stored = Utils.readContents(f);
+                    if (Codec.isSerialized(stored)) {
+                        File temp = tempFile(dir, name);
+                        Codec.write(temp, Codec.decode(stored, Commit.class));
+                        install(temp, f);
+                    }
+                }
+                if (size + f.length() >= Pack.MAX_SIZE) {
+                    flush(entries, packed);
+                    window.clear();
+                    size = 0;
+                }
+                entries.add(type == Pack.BLOB ? deltify(name, f, window)
+                            : new Pack.Entry(name, type, f));
+                packed.add(f);
+                size += f.length();
+            }
+        }
+        flush(entries, packed);
+    }
+
+    /** Return the IDs of the objects of type TYPE that prune keeps
+     *  whatever is live, given the time CUTOFF: those loose ones last
+     *  modified at or after CUTOFF, and all of those in packs that
+     *  were. */
+    List<String> recent(byte type, long cutoff) {
+        List<String> result = new ArrayList<>();
+        File[] files = dir(type).listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            if (Pack.isID(f.getName()) && f.lastModified() >= cutoff) {
+                result.add(f.getName());
+            }
+        }
+        for (Pack p : packs()) {
+            if (p.dataFile().lastModified() >= cutoff) {
+                result.addAll(p.ids(type));
+            }
+        }
+        return result;
+    }
+
+    /** Delete every object not in LIVE, and every leftover temporary
+     *  file, last modified before the time CUTOFF, and return the number
+     *  of bytes freed.  Loose objects are judged by their own files and
+     *  packed ones by their pack, which is rewritten without them; a
+     *  delta in LIVE keeps its base. */
+    long prune(Set<String> live, long cutoff) throws IOException {
+        long freed = 0;
+        for (File dir : new File[] {_blobs, _trees, _commits, _packDir}) {
+            File[] files = dir.listFiles();
+            for (File f : files == null ? new File[0] : files) {
+                String name = f.getName();
+                boolean dead = dir == _packDir ? name.contains(".tmp")
+                    : name.contains(".tmp") || Pack.isID(name)
+                        && !live.contains(name);
+                if (dead && f.isFile() && f.lastModified() < cutoff) {
+                    long length = f.length();
+                    if (f.delete()) {
+                        freed += length;
+                    }
+                }
+            }
+        }
+        for (Pack p : new ArrayList<>(packs())) {
+            if (p.dataFile().lastModified() < cutoff) {
+                freed += prune(p, live);
+            }
+        }
+        _commitCache.clear();
+        _treeCache.clear();
+        return freed;
+    }
+
+    /** Replace the pack P with one holding only its objects in LIVE,
+     *  and the bases of those that are deltas, unless all of them are
+     *  live.  Return the number of bytes freed. */
+    private long prune(Pack p, Set<String> live) throws IOException {
+        Set<String> keep = new HashSet<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        for (int rec = 0; rec < p.size(); rec += 1) {
+            if (live.contains(p.id(rec))) {
+                work.push(rec);
+            }
+        }
+        while (!work.isEmpty()) {
+            int rec = work.pop();
+            if (keep.add(p.id(rec)) && p.isDelta(rec)) {
+                int base = p.find(p.base(rec));
+                if (base >= 0) {
+                    work.push(base);
+                }
+            }
+        }
+        if (keep.size() == p.size()) {
+            return 0;
+        }
+        long before = p.dataFile().length() + p.indexFile().length();
+        long after = 0;
+        if (!keep.isEmpty()) {
+            List<Pack.Entry> entries = new ArrayList<>();
+            for (int rec = 0; rec < p.size(); rec += 1) {
+                if (keep.contains(p.id(rec))) {
+                    entries.add(new Pack.Entry(p.id(rec), p.type(rec),
+                            p.isDelta(rec) ? p.base(rec) : null,
+                            p.dataFile(), p.offset(rec), p.length(rec)));
+                }
+            }
+            Pack rewritten = addPack(entries);
+            after = rewritten.indexFile().length()
+                + rewritten.dataFile().length();
+            syncWritten();
+        }
+        p.indexFile().delete();
+        p.dataFile().delete();
+        synchronized (this) {
+            _packs = null;
+        }
+        return before - after;
+    }
+
+    /** Return the loose blobs NAMES in the order they are packed: by
+     *  file name, then by path, so that versions of one file are
+     *  together, then from largest to smallest. */
+    private List<String> deltaOrder(List<String> names) {
+        Map<String, String> paths = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (String id : commitIDs()) {
+            Commit com = readCommit(id);
+            if (com.getTree() != null) {
+                Tree.paths(this, com.getTree(), seen, paths);
+            } else {
+                for (Map.Entry<String, String> e
+                         : com.getBlobs().entrySet()) {
+                    paths.putIfAbsent(e.getValue(), e.getKey());
+                }
+            }
+        }
+        HashMap<String, Long> sizes = new HashMap<>();
+        for (String name : names) {
+            sizes.put(name, new File(_blobs, name).length());
+        }
+        List<String> result = new ArrayList<>(names);
+        result.sort(Comparator
+            .comparing((String id) -> {
+                String path = paths.getOrDefault(id, "");
+                return path.substring(path.lastIndexOf('/') + 1);
+            })
+            .thenComparing(id -> paths.getOrDefault(id, ""))
+            .thenComparing(id -> -sizes.get(id))
+            .thenComparing(id -> id));
+        return result;
+    }
+
+    /** Return the pack entry for loose blob ID, stored in F: a delta
+     *  against the best base in WINDOW, the blobs most recently added to
+     *  the same pack, or else F as it is.  ID is then added to WINDOW. */
+    private Pack.Entry deltify(String id, File f,
+                               ArrayDeque<DeltaBase> window) {
+        if (f.length() > DELTA_LIMIT) {
+            return new Pack.Entry(id, Pack.BLOB, f);
+        }
+        byte[] contents = readBlob(id);
+        DeltaBase best = null;
+        byte[] bestDelta = null;
+        for (DeltaBase base : window) {
+            if (base._depth >= MAX_CHAIN || Math.abs(base._contents.length
+                    - contents.length) > contents.length / 2) {
+                continue;
+            }
+            byte[] delta = Delta.create(base._contents, contents);
+            if (delta.length < f.length() / 2
+                && (bestDelta == null || delta.length < bestDelta.length)) {
+                best = base;
+                bestDelta = delta;
+            }
+        }
+        window.addFirst(new DeltaBase(id, contents,
+                best == null ? 0 : best._depth + 1));
+        if (window.size() > WINDOW) {
+            window.removeLast();
+        }
+        return best == null ? new Pack.Entry(id, Pack.BLOB, f)
+            : new Pack.Entry(id, Pack.BLOB, best._id, bestDelta);
+    }
+
+    /** A blob that later blobs in the same pack may be deltas against. */
+    private static class DeltaBase {
+        /** Blob ID with CONTENTS, stored at the end of a chain of DEPTH
+         *  deltas. */
+        DeltaBase(String id, byte[] contents, int depth) {
+            _id = id;
+            _contents = contents;
+            _depth = depth;
+        }
+
+        /** The blob ID. */
+        private final String _id;
+        /** The contents of the blob. */
+        private final byte[] _contents;
+        /** The number of deltas applied to read the blob. */
+        private final int _depth;
+    }
+
+    /** Write ENTRIES into a pack, then delete their loose files in
+     *  PACKED and clear both lists. */
+    private void flush(List<Pack.Entry> entries, List<File> packed)
+            throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        addPack(entries);
+        syncWritten();
+        for (File f : packed) {
+            f.delete();
+        }
+        entries.clear();
+        packed.clear();
+    }
+
+    /** Write ENTRIES into a new pack of this store, and return it. */
+    private Pack addPack(List<Pack.Entry> entries) throws IOException {
+        _packDir.mkdir();
+        Pack pack = new Pack(Pack.write(_packDir, entries));
+        written(pack.dataFile());
+        written(pack.indexFile());
+        if (_packs != null) {
+            _packs.add(pack);
+        }
+        return pack;
+    }
+
+    /** Return true iff object ID of type TYPE is loose in DIR or in
+     *  some pack. */
+    private boolean has(File dir, byte type, String id) {
+        if (new File(dir, id).isFile()) {
+            return true;
+        }
+        for (Pack p : packs()) {
+            int rec = p.find(id);
+            if (rec >= 0 && p.type(rec) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the stored bytes of object ID of type TYPE, loose in DIR
+     *  or packed. */
+    private byte[] read(File dir, byte type, String id) {
+        File loose = new File(dir, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack p : packs()) {
+            int rec = p.find(id);
+            if (rec >= 0 && p.type(rec) == type) {
+                byte[] stored = p.read(rec);
+                Trace.read(stored.length);
+                return stored;
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Return a stream over the stored bytes of object ID of type TYPE,
+     *  loose in DIR or packed. */
+    private InputStream openStored(File dir, byte type, String id)
+            throws IOException {
+        File loose = new File(dir, id);
+        if (loose.isFile()) {
+            InputStream in = new FileInputStream(loose);
+            Trace.opened();
+            return Trace.counted(in);
+        }
+        for (Pack p : packs()) {
+            int rec = p.find(id);
+            if (rec >= 0 && p.type(rec) == type) {
+                return Trace.counted(p.open(rec));
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Return the packs of this store, opening them on first use. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            _packsListed = _packDir.lastModified();
+            List<String> names = Utils.plainFilenamesIn(_packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        _packs.add(new Pack(new File(_packDir, name)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Return an empty, thread-safe map that keeps only its CAPACITY
+     *  most recently used entries. */
+    private static <V> Map<String, V> cache(int capacity) {
+        return Collections.synchronizedMap(
+            new LinkedHashMap<String, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, V> eldest) {
+                    return size() > capacity;
+                }
+            });
+    }
+
+    /** Marker at the start of a deflated blob. */
+    private static final byte[] DEFLATED = {0, 'G', 'Z', 1};
+
+    /** The .gitlet directory holding this store. */
+    private final File _gitlet;
+
+    /** Directory of loose blobs. */
+    private final File _blobs;
+
+    /** Directory of loose commits. */
+    private final File _commits;
+
+    /** Directory of loose trees. */
+    private final File _trees;
+
+    /** Directory of packs. */
+    private final File _packDir;
+
+    /** File of blob aliases, each line an old id and a content id. */
+    private final File _aliasFile;
+
+    /** The transaction recording the files written, or null. */
+    private Transaction _txn;
+
+    /** Content ids of blobs stored under old ids, or null until first
+     *  needed. */
+    private Map<String, String> _aliases;
+
+    /** Length of the alias file when it was read. */
+    private long _aliasesRead;
+
+    /** Number of blobs each blob is tried as a delta against. */
+    private static final int WINDOW = 10;
+
+    /** Longest chain of deltas. */
+    private static final int MAX_CHAIN = 10;
+
+    /** Largest blob that is stored as a delta, so that a blob and its
+     *  window fit in memory. */
+    private static final long DELTA_LIMIT = 16 << 20;
+
+    /** Number of recently read commits kept in memory. */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+
+    /** Number of recently used trees kept in memory. */
+    private static final int TREE_CACHE_SIZE = 4096;
+
+    /** Open packs, or null until first needed. */
+    private List<Pack> _packs;
+
+    /** Modification time of the pack directory when the packs were
+     *  listed. */
+    private long _packsListed;
+
+    /** Recently read commits by ID, least recently used first. */
+    private final Map<String, Commit> _commitCache =
+        cache(COMMIT_CACHE_SIZE);
+
+    /** Recently read or written trees by ID, least recently used
+     *  first. */
+    private final Map<String, Tree> _treeCache = cache(TREE_CACHE_SIZE);
+
+    /** The commit graph, or null until first needed. */
+    private CommitGraph _graph;
+
+    /** The message index, or null until first needed. */
+    private MessageIndex _messages;
+}
@@ -0,0 +1,531 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A pack file holding many objects, together with the sorted index used
+ *  to find them.  The pack is append-only: objects are written one after
+ *  another behind a small header and never rewritten.  The index is a
+ *  table of fixed-width records sorted by object ID, so a lookup is a
+ *  binary search over the memory-mapped index followed by a slice of the
+ *  memory-mapped pack.
+ *
+ *  An object is stored either as it would be stored loose, or, from
+ *  version 2, as a delta: the ID of a base object in the same pack
+ *  followed by the deflated Delta that turns the base's contents into
+ *  the object's.  Deltas are marked by the DELTA bit of the type in the
+ *  index.
+ *  @author Jinho Shin
+ */
+class Pack {
+
+    /** Type of a blob entry. */
+    static final byte BLOB = 1;
+
+    /** Type of a commit entry. */
+    static final byte COMMIT = 2;
+
+    /** Type of a tree entry. */
+    static final byte TREE = 3;
+
+    /** Largest pack that will be written, so that it can be mapped
+     *  with a single buffer. */
+    static final long MAX_SIZE = 1L << 30;
+
+    /** Magic number at the start of a pack ("GPAK"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number at the start of an index ("GIDX"). */
+    private static final int INDEX_MAGIC = 0x47494458;
+
+    /** Version of the pack and index layout.  Version 2 added deltas. */
+    private static final int VERSION = 2;
+
+    /** Bit of the type of a delta entry in the index. */
+    private static final int DELTA = 0x80;
+
+    /** Bytes in the header: magic, version and object count. */
+    private static final int HEADER = 12;
+
+    /** Bytes in a raw object ID. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes in an index record: ID, type, offset and length. */
+    private static final int RECORD = ID_BYTES + 1 + 8 + 8;
+
+    /** Open the pack whose index is INDEX. */
+    Pack(File index) {
+        String name = index.getName();
+        _indexFile = index;
+        _dataFile = new File(index.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                        + ".pack");
+        _index = map(index);
+        _data = map(_dataFile);
+        int version = _index.getInt(4);
+        if (_index.getInt(0) != INDEX_MAGIC || version < 1
+                || version > VERSION || _data.getInt(0) != PACK_MAGIC) {
+            throw Utils.error("Corrupt pack %s.", name);
+        }
+        _size = _index.getInt(8);
+    }
+
+    /** Return the pack file. */
+    File dataFile() {
+        return _dataFile;
+    }
+
+    /** Return the index file. */
+    File indexFile() {
+        return _indexFile;
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the record number of the object ID, or -1 if it is not
+     *  in this pack. */
+    int find(String id) {
+        if (!isID(id)) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(_index, HEADER + mid * RECORD, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the ID of record REC. */
+    String id(int rec) {
+        return toHex(_index, HEADER + rec * RECORD);
+    }
+
+    /** Return the type of record REC. */
+    byte type(int rec) {
+        return (byte) (_index.get(HEADER + rec * RECORD + ID_BYTES) & ~DELTA);
+    }
+
+    /** Return true iff record REC is stored as a delta. */
+    boolean isDelta(int rec) {
+        return (_index.get(HEADER + rec * RECORD + ID_BYTES) & DELTA) != 0;
+    }
+
+    /** Return the ID of the base of delta record REC. */
+    String base(int rec) {
+        return toHex(slice(rec), 0);
+    }
+
+    /** Return the Delta of record REC, which must be a delta. */
+    byte[] delta(int rec) {
+        ByteBuffer slice = slice(rec);
+        slice.position(ID_BYTES);
+        byte[] deflated = new byte[slice.remaining()];
+        slice.get(deflated);
+        try (InputStream in =
+                 new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the stored bytes of record REC. */
+    byte[] read(int rec) {
+        ByteBuffer slice = slice(rec);
+        byte[] result = new byte[slice.remaining()];
+        slice.get(result);
+        return result;
+    }
+
+    /** Return a stream over the stored bytes of record REC that reads
+     *  straight from the mapped pack. */
+    InputStream open(int rec) {
+        final ByteBuffer slice = slice(rec);
+        return new InputStream() {
+            @Override
+            public int read() {
+                return slice.hasRemaining() ? slice.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!slice.hasRemaining()) {
+                    return -1;
+                }
+                len = Math.min(len, slice.remaining());
+                slice.get(b, off, len);
+                return len;
+            }
+        };
+    }
+
+    /** Return the part of the mapped pack holding record REC. */
+    private ByteBuffer slice(int rec) {
+        int base = HEADER + rec * RECORD + ID_BYTES + 1;
+        int offset = (int) _index.getLong(base);
+        int length = (int) _index.getLong(base + 8);
+        return _data.slice(offset, length);
+    }
+
+    /** Return the IDs of all objects of type TYPE in this pack. */
+    List<String> ids(byte type) {
+        List<String> result = new ArrayList<>();
+        for (int rec = 0; rec < _size; rec += 1) {
+            if (type(rec) == type) {
+                result.add(id(rec));
+            }
+        }
+        return result;
+    }
+
+    /** Return the offset in the pack file of record REC. */
+    long offset(int rec) {
+        return _index.getLong(HEADER + rec * RECORD + ID_BYTES + 1);
+    }
+
+    /** Return the length of the stored bytes of record REC. */
+    long length(int rec) {
+        return _index.getLong(HEADER + rec * RECORD + ID_BYTES + 1 + 8);
+    }
+
+    /** An object waiting to be packed. */
+    static class Entry implements Comparable<Entry> {
+        /** An object of type TYPE named ID whose bytes are in SOURCE. */
+        Entry(String id, byte type, File source) {
+            this(id, type, null, source, 0, source.length());
+        }
+
+        /** An object of type TYPE named ID whose stored bytes are the
+         *  LENGTH bytes at POSITION in the file SOURCE.  If BASE is not
+         *  null, they are a delta against BASE as stored in a pack. */
+        Entry(String id, byte type, String base, File source,
+              long position, long length) {
+            _id = id;
+            _type = type;
+            _base = base;
+            _source = source;
+            _position = position;
+            _length = length;
+        }
+
+        /** An object of type TYPE named ID whose stored bytes are
+         *  STORED. */
+        Entry(String id, byte type, byte[] stored) {
+            this(id, type, null, null, 0, stored.length);
+            _stored = stored;
+        }
+
+        /** An object of type TYPE named ID, stored as DELTA against the
+         *  object BASE, which must be in the same pack. */
+        Entry(String id, byte type, String base, byte[] delta) {
+            this(id, type, base, null, 0, -1);
+            _delta = delta;
+        }
+
+        /** Return the ID of the object. */
+        String id() {
+            return _id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return _id.compareTo(other._id);
+        }
+
+        /** Compute the stored bytes of a delta, if not yet done. */
+        private void prepare() {
+            if (_delta == null || _stored != null) {
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.writeBytes(toBytes(_base));
+            try (DeflaterOutputStream deflated =
+                     new DeflaterOutputStream(bytes)) {
+                deflated.write(_delta);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _stored = bytes.toByteArray();
+            _length = _stored.length;
+        }
+
+        /** Write the stored bytes to OUT, at its position, taking them
+         *  from SOURCES, the open files by name.  Only the file last read
+         *  is kept open, since the entries taken from one pack come
+         *  together, and a run of loose objects would otherwise open
+         *  them all at once. */
+        private void write(FileChannel out, Map<File, FileChannel> sources)
+                throws IOException {
+            if (_stored != null) {
+                ByteBuffer buf = ByteBuffer.wrap(_stored);
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                return;
+            }
+            FileChannel in = sources.get(_source);
+            if (in == null) {
+                for (FileChannel open : sources.values()) {
+                    open.close();
+                }
+                sources.clear();
+                in = FileChannel.open(_source.toPath(),
+                        StandardOpenOption.READ);
+                sources.put(_source, in);
+            }
+            for (long done = 0; done < _length;) {
+                long n = in.transferTo(_position + done, _length - done, out);
+                if (n <= 0) {
+                    throw new IOException("short read from " + _source);
+                }
+                done += n;
+            }
+        }
+
+        /** The object ID. */
+        private final String _id;
+        /** The object type. */
+        private final byte _type;
+        /** The ID of the base of a delta, or null. */
+        private final String _base;
+        /** The file holding the stored bytes, or null if they are in
+         *  memory. */
+        private final File _source;
+        /** Where the stored bytes start in _source. */
+        private final long _position;
+        /** The Delta from the base, or null. */
+        private byte[] _delta;
+        /** The stored bytes, if they are in memory. */
+        private byte[] _stored;
+        /** Where the object starts in the pack. */
+        private long _offset;
+        /** The length of the stored bytes. */
+        private long _length;
+    }
+
+    /** Write ENTRIES into a new pack in directory DIR and return the
+     *  index file.  The pack is complete before its index appears, so a
+     *  reader never sees a half-written pack, and each of the two is
+     *  written to a temporary file that is then renamed over any file of
+     *  the same name, so a reader never sees a half-written index
+     *  either, and a pack or index shared with another store by a hard
+     *  link is replaced rather than changed.
+     *
+     *  Deltas are compressed and the pack is written by several threads
+     *  at once, each filling its own run of the file.  Objects already
+     *  stored in some file, loose or packed, are copied with
+     *  FileChannel.transferTo, so their bytes need not pass through the
+     *  Java heap. */
+    static File write(File dir, List<Entry> entries) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted);
+        List<Object> ids = new ArrayList<>();
+        for (Entry e : sorted) {
+            ids.add(e._id);
+        }
+        String name = "pack-" + Utils.sha1(ids);
+        File pack = new File(dir, name + ".pack");
+        File index = new File(dir, name + ".idx");
+        Workers.forEach(entries, Entry::prepare);
+        long offset = HEADER;
+        for (Entry e : entries) {
+            e._offset = offset;
+            offset += e._length;
+        }
+        File temp = new File(dir, name + ".tmp" + System.nanoTime());
+        try {
+            writeData(temp, entries, offset - HEADER);
+        } catch (IOException | RuntimeException excp) {
+            temp.delete();
+            throw excp;
+        }
+        Files.move(temp.toPath(), pack.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        temp = new File(dir, name + ".tmp" + System.nanoTime());
+        try {
+            writeIndex(temp, sorted);
+        } catch (IOException | RuntimeException excp) {
+            temp.delete();
+            throw excp;
+        }
+        Files.move(temp.toPath(), index.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return index;
+    }
+
+    /** Write the index of SORTED, the entries of a pack in order of id,
+     *  to the new file TEMP. */
+    private static void writeIndex(File temp, List<Entry> sorted)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        temp.toPath(), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (Entry e : sorted) {
+                out.write(toBytes(e._id));
+                out.writeByte(e._base == null ? e._type : e._type | DELTA);
+                out.writeLong(e._offset);
+                out.writeLong(e._length);
+            }
+        }
+    }
+
+    /** Write the header and ENTRIES, of SIZE stored bytes in all, to
+     *  the new file TEMP. */
+    private static void writeData(File temp, List<Entry> entries, long size)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(PACK_MAGIC).putInt(VERSION).putInt(entries.size());
+            header.flip();
+            out.write(header);
+        }
+        Workers.forEach(runs(entries, size), run -> {
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                out.position(run.get(0)._offset);
+                Map<File, FileChannel> sources = new HashMap<>();
+                try {
+                    for (Entry e : run) {
+                        e.write(out, sources);
+                    }
+                } finally {
+                    for (FileChannel in : sources.values()) {
+                        in.close();
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+    }
+
+    /** Return ENTRIES, of SIZE stored bytes in all, divided into about
+     *  as many consecutive runs of similar size as there are worker
+     *  threads. */
+    private static List<List<Entry>> runs(List<Entry> entries, long size) {
+        List<List<Entry>> result = new ArrayList<>();
+        long target = size / Workers.parallelism() + 1;
+        int start = 0;
+        long filled = 0;
+        for (int i = 0; i < entries.size(); i += 1) {
+            filled += entries.get(i)._length;
+            if (filled >= target || i == entries.size() - 1) {
+                result.add(entries.subList(start, i + 1));
+                start = i + 1;
+                filled = 0;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff NAME looks like a full object ID. */
+    static boolean isID(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the raw bytes of the hexadecimal ID. */
+    static byte[] toBytes(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal ID whose raw bytes start at BASE in BUF. */
+    static String toHex(ByteBuffer buf, int base) {
+        StringBuilder result = new StringBuilder(Utils.UID_LENGTH);
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int b = buf.get(base + i) & 0xff;
+            result.append(Character.forDigit(b >> 4, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /** Compare the raw ID starting at BASE in BUF with KEY as unsigned
+     *  bytes. */
+    static int compare(ByteBuffer buf, int base, byte[] key) {
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Integer.compare(buf.get(base + i) & 0xff,
+                    key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Map all of FILE read-only. */
+    private static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** The index file. */
+    private final File _indexFile;
+
+    /** The pack file. */
+    private final File _dataFile;
+
+    /** The mapped pack. */
+    private final MappedByteBuffer _data;
+
+    /** Number of objects in the pack. */
+    private final int _size;
+}
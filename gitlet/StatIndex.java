@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A cache, kept in .gitlet/index, of the blob id of each working file
+ *  that has been hashed, together with the file's size and modification
+ *  time when it was hashed.  A file whose size and modification time are
+ *  unchanged is not read again.  Lookups may be made from several
+ *  threads at once.
+ *
+ *  A file changed within the timestamp resolution of the file system
+ *  just after it was hashed would keep its old modification time, so an
+ *  entry is only trusted once the file's modification time is at least
+ *  RACY_WINDOW older than the moment it was hashed.
+ *  @author Jinho Shin
+ */
+class StatIndex {
+
+    /** The index stored in .gitlet directory GITLET. */
+    StatIndex(File gitlet) {
+        _file = new File(gitlet, "index");
+    }
+
+    /** Return the blob id of the working file FILE, tracked as NAME,
+     *  hashing it only if it changed since it was last hashed. */
+    String id(File file, String name) {
+        load();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        Entry e = _entries.get(name);
+        if (e != null && e._size == size && e._mtime == mtime
+                && mtime + RACY_WINDOW <= e._checked) {
+            return e._id;
+        }
+        long checked = System.currentTimeMillis();
+        String id = Utils.sha1(file);
+        _entries.put(name, new Entry(size, mtime, checked, id));
+        _changed = true;
+        return id;
+    }
+
+    /** Write the index back if anything was rehashed. */
+    synchronized void save() {
+        if (!_changed) {
+            return;
+        }
+        File temp = new File(_file.getPath() + ".tmp"
+                + ProcessHandle.current().pid());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            temp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_entries.size());
+                for (String name : _entries.keySet()) {
+                    Entry e = _entries.get(name);
+                    out.writeUTF(name);
+                    out.writeLong(e._size);
+                    out.writeLong(e._mtime);
+                    out.writeLong(e._checked);
+                    out.writeUTF(e._id);
+                }
+            }
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _changed = false;
+    }
+
+    /** Read the index file, if there is one and it has not been read.
+     *  An index of another version is ignored and rebuilt. */
+    private synchronized void load() {
+        if (_entries != null) {
+            return;
+        }
+        _entries = new ConcurrentHashMap<>();
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        _file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long checked = in.readLong();
+                _entries.put(name, new Entry(size, mtime, checked,
+                        in.readUTF()));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** What was known about one working file when it was hashed. */
+    private static class Entry {
+        /** A file of SIZE bytes, last modified at MTIME, that had blob id
+         *  ID when hashed at time CHECKED. */
+        Entry(long size, long mtime, long checked, String id) {
+            _size = size;
+            _mtime = mtime;
+            _checked = checked;
+            _id = id;
+        }
+
+        /** The size of the file. */
+        private final long _size;
+        /** The modification time of the file. */
+        private final long _mtime;
+        /** When the file was hashed. */
+        private final long _checked;
+        /** The blob id of the file. */
+        private final String _id;
+    }
+
+    /** Milliseconds by which a modification time must precede the moment
+     *  of hashing for the entry to be trusted; covers file systems that
+     *  store times to the nearest two seconds. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** Magic number at the start of the file ("GSTA"). */
+    private static final int MAGIC = 0x47535441;
+
+    /** Version of the file layout and of the blob ids it caches. */
+    private static final int VERSION = 2;
+
+    /** The index file. */
+    private final File _file;
+
+    /** Entries by file name, or null until loaded. */
+    private ConcurrentHashMap<String, Entry> _entries;
+
+    /** True iff some entry has changed since the index was loaded. */
+    private volatile boolean _changed;
+}
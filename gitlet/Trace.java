@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters of the work done by gitlet commands, and the trace of one
+ *  command built from them.  The counters are kept for the whole
+ *  process, by Utils, Codec and ObjectStore, whatever thread does the
+ *  work: the files they open, the bytes they read and write, the objects
+ *  they decode, by class, and the time spent hashing.  A command run
+ *  with the option --trace before its name, as in "gitlet --trace
+ *  status", prints one line to standard error when it finishes, success
+ *  or not, giving the difference of the counters over the command, as a
+ *  JSON object whose keys always come in this order:
+ *    {"trace":1,"command":"status","ok":true,"wall_us":1234,
+ *     "files_opened":5,"bytes_read":1024,"bytes_written":0,
+ *     "hash_us":120,"objects_decoded":{"Commit":1,"GitMap":1}}
+ *  Times are in microseconds, and objects_decoded lists classes in
+ *  alphabetical order.  Commands in a batch or sent to the daemon may be
+ *  traced each in the same way; those of the daemon are traced on its
+ *  own standard error.  The files of the commit graph, message index
+ *  and stat index, which have their own readers, are not counted.
+ *  @author Jinho Shin
+ */
+class Trace {
+
+    /** The option that asks for a command to be traced. */
+    static final String OPTION = "--trace";
+
+    /** The version of the format of the trace line. */
+    static final int VERSION = 1;
+
+    /** Count a file opened. */
+    static void opened() {
+        OPENED.increment();
+    }
+
+    /** Count N bytes read. */
+    static void read(long n) {
+        READ.add(n);
+    }
+
+    /** Count N bytes written. */
+    static void wrote(long n) {
+        WRITTEN.add(n);
+    }
+
+    /** Count an object of class TYPE decoded. */
+    static void decoded(Class<?> type) {
+        DECODED.computeIfAbsent(type.getSimpleName(), k -> new LongAdder())
+            .increment();
+    }
+
+    /** Count the time since START, a value of System.nanoTime, as spent
+     *  hashing. */
+    static void hashed(long start) {
+        HASHING.add(System.nanoTime() - start);
+    }
+
+    /** Return IN, counting the bytes read from it. */
+    static InputStream counted(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    READ.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len)
+                    throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    READ.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Return OUT, counting the bytes written to it. */
+    static OutputStream counted(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                WRITTEN.increment();
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len)
+                    throws IOException {
+                out.write(buf, off, len);
+                WRITTEN.add(len);
+            }
+        };
+    }
+
+    /** A trace of the command COMMAND, starting now. */
+    Trace(String command) {
+        _command = command;
+        _start = System.nanoTime();
+        _opened = OPENED.sum();
+        _read = READ.sum();
+        _written = WRITTEN.sum();
+        _hashing = HASHING.sum();
+        _decoded = decoded();
+    }
+
+    /** Return the trace line of the command, which has just finished,
+     *  successfully iff OK. */
+    String report(boolean ok) {
+        long wall = System.nanoTime() - _start;
+        StringBuilder line = new StringBuilder();
+        line.append("{\"trace\":").append(VERSION);
+        line.append(",\"command\":");
+        quote(line, _command);
+        line.append(",\"ok\":").append(ok);
+        line.append(",\"wall_us\":").append(wall / 1000);
+        line.append(",\"files_opened\":").append(OPENED.sum() - _opened);
+        line.append(",\"bytes_read\":").append(READ.sum() - _read);
+        line.append(",\"bytes_written\":").append(WRITTEN.sum() - _written);
+        line.append(",\"hash_us\":")
+            .append((HASHING.sum() - _hashing) / 1000);
+        line.append(",\"objects_decoded\":{");
+        String sep = "";
+        for (Map.Entry<String, Long> e : decoded().entrySet()) {
+            long n = e.getValue() - _decoded.getOrDefault(e.getKey(), 0L);
+            if (n > 0) {
+                line.append(sep);
+                quote(line, e.getKey());
+                line.append(':').append(n);
+                sep = ",";
+            }
+        }
+        return line.append("}}").toString();
+    }
+
+    /** Return the number of objects of each class decoded so far, by
+     *  class name. */
+    private static Map<String, Long> decoded() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : DECODED.entrySet()) {
+            result.put(e.getKey(), e.getValue().sum());
+        }
+        return result;
+    }
+
+    /** Append S to LINE as a JSON string. */
+    private static void quote(StringBuilder line, String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /** The number of files opened. */
+    private static final LongAdder OPENED = new LongAdder();
+    /** The number of bytes read. */
+    private static final LongAdder READ = new LongAdder();
+    /** The number of bytes written. */
+    private static final LongAdder WRITTEN = new LongAdder();
+    /** The nanoseconds spent hashing. */
+    private static final LongAdder HASHING = new LongAdder();
+    /** The number of objects decoded, by class name. */
+    private static final Map<String, LongAdder> DECODED =
+        new ConcurrentHashMap<>();
+
+    /** The name of the command traced. */
+    private final String _command;
+    /** The time the command started, from System.nanoTime. */
+    private final long _start;
+    /** The counters when the command started. */
+    private final long _opened, _read, _written, _hashing;
+    /** The objects decoded by class when the command started. */
+    private final Map<String, Long> _decoded;
+}
@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/** The writes of one command, made so that a crash at any point leaves
+ *  the repository, as the next command finds it, as it was before the
+ *  command or as it is after it.
+ *
+ *  Files that name things, such as the head, the branches and the
+ *  staging area, are written to temporary files beside them, named with
+ *  a leading dot so that listings of branches skip them, and only
+ *  renamed into place when the transaction commits; until then, reads
+ *  through the transaction see the new contents and other processes see
+ *  the old.  New objects are put in place as they are written, since
+ *  nothing refers to them until those renames.  Nothing is synced to disk
+ *  until the commit, which syncs all the files written at once, then
+ *  their directories, so no branch or staging file can ever refer to an
+ *  object lost in a crash.  A command thus pays for a few sync barriers
+ *  rather than one per file.
+ *
+ *  The renames cannot all be made at once, so the commit first writes a
+ *  journal listing them, and the files to delete, into the .gitlet
+ *  directory: synced under a temporary name and then renamed, which is
+ *  the single point at which the transaction commits.  The renames and
+ *  deletions follow, and then the journal is deleted.  Before a command
+ *  runs, recover replays the journal left by any command that crashed
+ *  after committing, and deletes the temporary files it left, while
+ *  holding the locks that keep every other writer out.  The temporary
+ *  files of a command that crashed before committing are deleted then
+ *  too, or by the next gc.
+ *  @author Jinho Shin
+ */
+class Transaction {
+
+    /** A transaction whose journal goes in the .gitlet directory
+     *  GITLET. */
+    Transaction(File gitlet) {
+        _gitlet = gitlet;
+    }
+
+    /** Finish the transactions whose journals are in the .gitlet
+     *  directory GITLET, left by commands that crashed after committing,
+     *  and delete the temporary files of any transaction that crashed,
+     *  looking for them everywhere in GITLET if SWEEP and otherwise only
+     *  beside the files the journals name.  Nothing is done unless there
+     *  is a journal or SWEEP.  Takes and releases the locks on GITLET's
+     *  head, branches and staging area, so it must be called before any
+     *  are held. */
+    static void recover(File gitlet, boolean sweep) throws IOException {
+        if (!gitlet.isDirectory() || !sweep && journals(gitlet).isEmpty()) {
+            return;
+        }
+        Locks locks = new Locks();
+        try {
+            locks.lock(gitlet, Locks.REFS, false);
+            locks.lock(gitlet, Locks.STAGING, false);
+            Set<File> dirs = new LinkedHashSet<>();
+            for (File journal : journals(gitlet)) {
+                dirs.addAll(replay(journal));
+            }
+            for (File dir : dirs) {
+                force(dir, false);
+            }
+            for (File journal : journals(gitlet)) {
+                journal.delete();
+            }
+            if (sweep) {
+                try (Stream<Path> paths = Files.walk(gitlet.toPath())) {
+                    paths.filter(Files::isDirectory)
+                        .forEach(p -> dirs.add(p.toFile()));
+                }
+            }
+            for (File dir : dirs) {
+                File[] files = dir.listFiles();
+                for (File f : files == null ? new File[0] : files) {
+                    if (TEMP.matcher(f.getName()).matches()) {
+                        f.delete();
+                    }
+                }
+            }
+        } finally {
+            locks.release();
+        }
+    }
+
+    /** Record FILE, already in its final place, as written by this
+     *  transaction, to be synced before anything refers to it. */
+    synchronized void created(File file) {
+        _created.add(file);
+    }
+
+    /** Make the result of concatenating CONTENTS, each a String or a byte
+     *  array, the new contents of FILE once this transaction commits. */
+    void write(File file, Object... contents) {
+        File temp = new File(file.getParentFile(), "." + file.getName()
+                + ".tmp" + ProcessHandle.current().pid() + "-"
+                + System.nanoTime());
+        Utils.writeContents(temp, contents);
+        synchronized (this) {
+            File old = _pending.put(file, temp);
+            if (old != null) {
+                _created.remove(old);
+                old.delete();
+            }
+            _created.add(temp);
+        }
+    }
+
+    /** Delete FILE once this transaction commits. */
+    synchronized void delete(File file) {
+        File old = _pending.put(file, null);
+        if (old != null) {
+            _created.remove(old);
+            old.delete();
+        }
+    }
+
+    /** Return true iff FILE has been written or deleted by this
+     *  transaction. */
+    synchronized boolean pending(File file) {
+        return _pending.containsKey(file);
+    }
+
+    /** Return true iff FILE exists as this transaction sees it. */
+    synchronized boolean exists(File file) {
+        if (_pending.containsKey(file)) {
+            return _pending.get(file) != null;
+        }
+        return file.exists();
+    }
+
+    /** Return the contents of FILE as this transaction sees it. */
+    byte[] read(File file) {
+        File current;
+        synchronized (this) {
+            current = _pending.getOrDefault(file, file);
+        }
+        if (current == null) {
+            throw new IllegalArgumentException(file + " was deleted");
+        }
+        return Utils.readContents(current);
+    }
+
+    /** Return the contents of FILE as this transaction sees it, as a
+     *  String. */
+    String readString(File file) {
+        return new String(read(file), StandardCharsets.UTF_8);
+    }
+
+    /** Sync every file written so far, and then the directories holding
+     *  them. */
+    void sync() throws IOException {
+        List<File> files;
+        synchronized (this) {
+            files = new ArrayList<>(_created);
+            _created.clear();
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File f : files) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+        }
+        Workers.forEach(files, f -> force(f, true));
+        Workers.forEach(dirs, d -> force(d, false));
+    }
+
+    /** Make every write of this transaction durable and visible. */
+    void commit() throws IOException {
+        sync();
+        Map<File, File> pending;
+        synchronized (this) {
+            pending = new LinkedHashMap<>(_pending);
+            _pending.clear();
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        StringBuilder entries = new StringBuilder();
+        for (Map.Entry<File, File> e : pending.entrySet()) {
+            entries.append(e.getKey().getAbsolutePath());
+            if (e.getValue() != null) {
+                entries.append('\t').append(e.getValue().getAbsolutePath());
+            }
+            entries.append('\n');
+        }
+        String id = ProcessHandle.current().pid() + "-" + System.nanoTime();
+        File temp = new File(_gitlet, ".journal.tmp" + id);
+        File journal = new File(_gitlet, JOURNAL + id);
+        Utils.writeContents(temp, entries.toString());
+        force(temp, true);
+        Files.move(temp.toPath(), journal.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        force(_gitlet, false);
+        for (File dir : replay(journal)) {
+            force(dir, false);
+        }
+        journal.delete();
+    }
+
+    /** Make the renames and deletions listed in JOURNAL that have not
+     *  been made yet, and return the directories changed. */
+    private static Set<File> replay(File journal) throws IOException {
+        Set<File> dirs = new LinkedHashSet<>();
+        String entries = Utils.readContentsAsString(journal);
+        for (String entry : entries.split("\n")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            String[] names = entry.split("\t");
+            File file = new File(names[0]);
+            if (names.length == 1) {
+                Files.deleteIfExists(file.toPath());
+            } else if (new File(names[1]).exists()) {
+                Files.move(Paths.get(names[1]), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            dirs.add(file.getAbsoluteFile().getParentFile());
+        }
+        return dirs;
+    }
+
+    /** Return the journals in the .gitlet directory GITLET. */
+    private static List<File> journals(File gitlet) {
+        List<File> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(gitlet);
+        for (String name : names == null ? new ArrayList<String>() : names) {
+            if (name.startsWith(JOURNAL)) {
+                result.add(new File(gitlet, name));
+            }
+        }
+        return result;
+    }
+
+    /** Discard the writes of this transaction not yet committed.  New
+     *  objects are left for gc. */
+    synchronized void abort() {
+        for (File temp : _pending.values()) {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+        _pending.clear();
+        _created.clear();
+    }
+
+    /** Flush FILE, a plain file if PLAIN and otherwise a directory, to
+     *  disk.  Some systems cannot open a directory, in which case its
+     *  entries are as durable as they can be made anyway. */
+    private static void force(File file, boolean plain) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (plain) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Prefix of the names of journals. */
+    private static final String JOURNAL = "journal-";
+
+    /** Names of the temporary files of transactions. */
+    private static final Pattern TEMP =
+        Pattern.compile("\\..+\\.tmp\\d+-\\d+");
+
+    /** The .gitlet directory holding the journal. */
+    private final File _gitlet;
+
+    /** Files written, in their final place or as temporary files, not
+     *  yet synced. */
+    private final Set<File> _created = new LinkedHashSet<>();
+
+    /** The temporary file holding the new contents of each named file
+     *  written, or null for one deleted, in the order written. */
+    private final Map<File, File> _pending = new LinkedHashMap<>();
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Sends the history reachable from a commit of one repository to
+ *  another, as fetch and push do.  The two first negotiate what is
+ *  wanted: starting from the commit, the sender walks back through all
+ *  parents, first and second, and stops at each commit the receiver
+ *  already has, since a repository that has a commit has its whole
+ *  history.  The trees and blobs of the commits found are then collected
+ *  the same way, stopping at trees the receiver has, and exactly the
+ *  missing objects are sent in one batch.
+ *  @author Jinho Shin
+ */
+class Transfer {
+
+    /** A transfer from the store SOURCE to the store TARGET. */
+    Transfer(ObjectStore source, ObjectStore target) {
+        _source = source;
+        _target = target;
+    }
+
+    /** Send everything reachable from commit WANT that the receiver does
+     *  not have, and return the commits sent. */
+    List<Commit> send(String want) throws IOException {
+        List<Commit> commits = negotiate(want);
+        Set<String> trees = new LinkedHashSet<>();
+        Set<String> blobs = new LinkedHashSet<>();
+        for (Commit com : commits) {
+            if (com.getTree() != null) {
+                Tree.missing(_source, com.getTree(), _target, trees, blobs);
+            } else {
+                for (String blob : com.getBlobs().values()) {
+                    if (!_target.hasBlob(blob)) {
+                        blobs.add(blob);
+                    }
+                }
+            }
+        }
+        _source.send(blobs, trees, commits, _target);
+        _target.indexCommits(commits);
+        return commits;
+    }
+
+    /** Return the commits reachable from WANT that the receiver does not
+     *  have, each after its parents. */
+    List<Commit> negotiate(String want) {
+        List<Commit> result = new ArrayList<>();
+        if (_target.hasCommit(want)) {
+            return result;
+        }
+        Set<String> visited = new HashSet<>();
+        ArrayDeque<String> path = new ArrayDeque<>();
+        visited.add(want);
+        path.push(want);
+        while (!path.isEmpty()) {
+            Commit com = _source.readCommit(path.peek());
+            boolean ready = true;
+            for (String p : new String[] {com.getParent(),
+                                          com.getParent2()}) {
+                if (p != null && !visited.contains(p)
+                    && !_target.hasCommit(p)) {
+                    visited.add(p);
+                    path.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                path.pop();
+                result.add(com);
+            }
+        }
+        return result;
+    }
+
+    /** The sending store. */
+    private final ObjectStore _source;
+
+    /** The receiving store. */
+    private final ObjectStore _target;
+}
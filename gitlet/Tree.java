@@ -0,0 +1,406 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit's snapshot.  A tree maps the names of the
+ *  files in a directory to their blob ids and the names of its
+ *  subdirectories to their tree ids, and is stored under the SHA-1 of
+ *  its contents, so two commits that share a directory share its tree.
+ *  A commit refers to the tree of the working directory.
+ *
+ *  A directory with more than MAX_ENTRIES entries is split instead: its
+ *  tree maps hexadecimal digits to trees each holding the entries whose
+ *  names hash to that digit, and those trees are split again, on the
+ *  next digit of the hash, if they are still too large.  Changing one
+ *  file therefore writes new trees only along the path from the root to
+ *  that file, each of bounded size, and every other tree is reused.  A
+ *  split directory whose entries fall back to MAX_ENTRIES or fewer is
+ *  made whole again, so a directory's tree depends only on what it
+ *  holds.
+ *  @author Jinho Shin
+ */
+class Tree implements Serializable {
+
+    /** Most entries held by a tree that is not split. */
+    static final int MAX_ENTRIES = 128;
+
+    /** Return the id of the tree holding FILES, a map from paths to blob
+     *  ids, writing any trees that are missing to STORE. */
+    static String write(ObjectStore store, Map<String, String> files) {
+        return update(store, null, files);
+    }
+
+    /** Return the id of the tree that results from applying CHANGES to
+     *  tree BASE, which may be null for an empty tree, writing any new
+     *  trees to STORE.  CHANGES maps paths to their new blob ids, or to
+     *  null for paths that are removed. */
+    static String update(ObjectStore store, String base,
+                         Map<String, String> changes) {
+        String id = update(store, base, changes, 0);
+        return id == null ? store.writeTree(EMPTY) : id;
+    }
+
+    /** Return the id of the tree of COM, writing one to STORE for a
+     *  commit made before trees existed. */
+    static String of(ObjectStore store, Commit com) {
+        return com.getTree() != null ? com.getTree()
+            : write(store, com.getBlobs());
+    }
+
+    /** Return all the files under tree ID in STORE, as a map from paths
+     *  to blob ids. */
+    static GitMap files(ObjectStore store, String id) {
+        GitMap result = new GitMap();
+        collect(store, id, "", result);
+        return result;
+    }
+
+    /** Return the blob id of PATH under tree ID in STORE, or null if
+     *  there is no such file. */
+    static String lookup(ObjectStore store, String id, String path) {
+        int depth = 0;
+        while (id != null) {
+            Tree t = store.readTree(id);
+            int slash = path.indexOf('/');
+            String top = slash < 0 ? path : path.substring(0, slash);
+            if (t._split) {
+                id = t._subtrees.get(bucket(top, depth));
+                depth += 1;
+            } else if (slash < 0) {
+                return t._files.get(path);
+            } else {
+                id = t._subtrees.get(top);
+                path = path.substring(slash + 1);
+                depth = 0;
+            }
+        }
+        return null;
+    }
+
+    /** Add to TREES and BLOBS the trees and blobs of tree ID in SOURCE
+     *  that TARGET does not have and that are not in them already,
+     *  subtrees before the trees holding them.  Trees that TARGET has are
+     *  not read, since it has everything in them too. */
+    static void missing(ObjectStore source, String id, ObjectStore target,
+                        Set<String> trees, Set<String> blobs) {
+        if (trees.contains(id) || target.hasTree(id)) {
+            return;
+        }
+        Tree t = source.readTree(id);
+        for (String blob : t._files.values()) {
+            if (!blobs.contains(blob) && !target.hasBlob(blob)) {
+                blobs.add(blob);
+            }
+        }
+        for (String sub : t._subtrees.values()) {
+            missing(source, sub, target, trees, blobs);
+        }
+        trees.add(id);
+    }
+
+    /** Add tree ID in STORE and every tree under it to TREES, and their
+     *  blobs to BLOBS, which may be shared with other threads.  Trees
+     *  already in TREES are not read again. */
+    static void reachable(ObjectStore store, String id, Set<String> trees,
+                          Set<String> blobs) {
+        if (!trees.add(id)) {
+            return;
+        }
+        Tree t = store.readTree(id);
+        blobs.addAll(t._files.values());
+        for (String sub : t._subtrees.values()) {
+            reachable(store, sub, trees, blobs);
+        }
+    }
+
+    /** Return the files that differ between trees A and B in STORE,
+     *  either of which may be null for an empty tree, as a map from each
+     *  path to its blob ids in A and in B, null where it is absent.
+     *  Trees the two have in common are not read. */
+    static TreeMap<String, String[]> diff(ObjectStore store, String a,
+                                          String b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(store, a, b, "", result);
+        return result;
+    }
+
+    /** Return the files that differ between the maps from paths to blob
+     *  ids A and B, as for diff. */
+    static TreeMap<String, String[]> diff(Map<String, String> a,
+                                          Map<String, String> b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        for (Map.Entry<String, String> e : a.entrySet()) {
+            String other = b.get(e.getKey());
+            if (!e.getValue().equals(other)) {
+                result.put(e.getKey(), new String[] {e.getValue(), other});
+            }
+        }
+        for (Map.Entry<String, String> e : b.entrySet()) {
+            if (!a.containsKey(e.getKey())) {
+                result.put(e.getKey(), new String[] {null, e.getValue()});
+            }
+        }
+        return result;
+    }
+
+    /** Add to RESULT the files that differ between trees A and B in
+     *  STORE, with PREFIX before their paths. */
+    private static void diff(ObjectStore store, String a, String b,
+                             String prefix, TreeMap<String, String[]> result) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree ta = a == null ? EMPTY : store.readTree(a);
+        Tree tb = b == null ? EMPTY : store.readTree(b);
+        if (ta._split != tb._split) {
+            GitMap fa = new GitMap(), fb = new GitMap();
+            if (a != null) {
+                collect(store, a, "", fa);
+            }
+            if (b != null) {
+                collect(store, b, "", fb);
+            }
+            for (Map.Entry<String, String[]> e : diff(fa, fb).entrySet()) {
+                result.put(prefix + e.getKey(), e.getValue());
+            }
+            return;
+        }
+        for (Map.Entry<String, String[]> e
+                 : diff(ta._files, tb._files).entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        TreeSet<String> names = new TreeSet<>(ta._subtrees.keySet());
+        names.addAll(tb._subtrees.keySet());
+        for (String name : names) {
+            diff(store, ta._subtrees.get(name), tb._subtrees.get(name),
+                 ta._split ? prefix : prefix + name + "/", result);
+        }
+    }
+
+    /** Add to RESULT, for each blob under tree ID in STORE that is not
+     *  already in it, the path of one file with that blob, skipping
+     *  trees in SEEN and adding the others to SEEN. */
+    static void paths(ObjectStore store, String id, Set<String> seen,
+                      Map<String, String> result) {
+        paths(store, id, "", seen, result);
+    }
+
+    /** Return the id of this tree. */
+    String id() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            encode(out);
+            out.close();
+            return Utils.sha1("tree ", bytes.toByteArray());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the entries of this tree to OUT. */
+    void encode(DataOutputStream out) throws IOException {
+        out.writeBoolean(_split);
+        Codec.writeMap(out, _files);
+        Codec.writeMap(out, _subtrees);
+    }
+
+    /** Return a tree written by encode to IN, in format VERSION. */
+    static Tree decode(DataInputStream in, int version) throws IOException {
+        boolean split = in.readBoolean();
+        return new Tree(split, new TreeMap<>(Codec.readMap(in)),
+                new TreeMap<>(Codec.readMap(in)));
+    }
+
+    /** A tree, split iff SPLIT, with FILES and SUBTREES. */
+    private Tree(boolean split, TreeMap<String, String> files,
+                 TreeMap<String, String> subtrees) {
+        _split = split;
+        _files = files;
+        _subtrees = subtrees;
+    }
+
+    /** Return the id of the tree that results from applying CHANGES to
+     *  tree BASE, or null if it would be empty.  BASE is DEPTH digits
+     *  below the tree of its directory. */
+    private static String update(ObjectStore store, String base,
+                                 Map<String, String> changes, int depth) {
+        if (changes.isEmpty()) {
+            return base;
+        }
+        Tree t = base == null ? EMPTY : store.readTree(base);
+        TreeMap<String, String> files = new TreeMap<>(t._files);
+        TreeMap<String, String> subtrees = new TreeMap<>(t._subtrees);
+        HashMap<String, Map<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            String top = slash < 0 ? path : path.substring(0, slash);
+            if (t._split) {
+                below.computeIfAbsent(bucket(top, depth),
+                    k -> new HashMap<>()).put(path, e.getValue());
+            } else if (slash >= 0) {
+                below.computeIfAbsent(top, k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                files.remove(path);
+            } else {
+                files.put(path, e.getValue());
+            }
+        }
+        int next = t._split ? depth + 1 : 0;
+        for (Map.Entry<String, Map<String, String>> e : below.entrySet()) {
+            String sub = update(store, subtrees.get(e.getKey()),
+                    e.getValue(), next);
+            if (sub == null) {
+                subtrees.remove(e.getKey());
+            } else {
+                subtrees.put(e.getKey(), sub);
+            }
+        }
+        if (t._split) {
+            if (subtrees.isEmpty()) {
+                return null;
+            }
+            TreeMap<String, String> allFiles = new TreeMap<>();
+            TreeMap<String, String> allSubtrees = new TreeMap<>();
+            if (changes.containsValue(null)
+                    && gather(store, subtrees, allFiles, allSubtrees)) {
+                return make(store, allFiles, allSubtrees, depth);
+            }
+            return store.writeTree(new Tree(true, files, subtrees));
+        }
+        return make(store, files, subtrees, depth);
+    }
+
+    /** Add the entries of BUCKETS, the buckets of a split tree in STORE,
+     *  to FILES and SUBTREES and return true if there are no more than
+     *  MAX_ENTRIES of them, so that the tree should no longer be split,
+     *  and otherwise return false.  A bucket that is split itself has
+     *  too many already. */
+    private static boolean gather(ObjectStore store,
+                                  Map<String, String> buckets,
+                                  TreeMap<String, String> files,
+                                  TreeMap<String, String> subtrees) {
+        for (String id : buckets.values()) {
+            Tree b = store.readTree(id);
+            if (b._split) {
+                return false;
+            }
+            files.putAll(b._files);
+            subtrees.putAll(b._subtrees);
+            if (files.size() + subtrees.size() > MAX_ENTRIES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the id of the tree holding FILES and SUBTREES, split if
+     *  it has too many entries, or null if it would be empty.  It is
+     *  DEPTH digits below the tree of its directory. */
+    private static String make(ObjectStore store,
+                               TreeMap<String, String> files,
+                               TreeMap<String, String> subtrees,
+                               int depth) {
+        if (files.isEmpty() && subtrees.isEmpty()) {
+            return null;
+        }
+        if (files.size() + subtrees.size() <= MAX_ENTRIES
+                || depth >= MAX_DEPTH) {
+            return store.writeTree(new Tree(false, files, subtrees));
+        }
+        HashMap<String, TreeMap<String, String>> bucketFiles =
+            new HashMap<>();
+        HashMap<String, TreeMap<String, String>> bucketSubtrees =
+            new HashMap<>();
+        for (String name : files.keySet()) {
+            bucketFiles.computeIfAbsent(bucket(name, depth),
+                k -> new TreeMap<>()).put(name, files.get(name));
+        }
+        for (String name : subtrees.keySet()) {
+            bucketSubtrees.computeIfAbsent(bucket(name, depth),
+                k -> new TreeMap<>()).put(name, subtrees.get(name));
+        }
+        TreeMap<String, String> buckets = new TreeMap<>();
+        for (int d = 0; d < 16; d += 1) {
+            String key = Integer.toHexString(d);
+            String sub = make(store,
+                bucketFiles.getOrDefault(key, new TreeMap<>()),
+                bucketSubtrees.getOrDefault(key, new TreeMap<>()),
+                depth + 1);
+            if (sub != null) {
+                buckets.put(key, sub);
+            }
+        }
+        return store.writeTree(new Tree(true, new TreeMap<>(), buckets));
+    }
+
+    /** Add the files under tree ID in STORE to RESULT, with PREFIX
+     *  before their paths. */
+    private static void collect(ObjectStore store, String id, String prefix,
+                                GitMap result) {
+        Tree t = store.readTree(id);
+        for (Map.Entry<String, String> e : t._files.entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t._subtrees.entrySet()) {
+            collect(store, e.getValue(),
+                t._split ? prefix : prefix + e.getKey() + "/", result);
+        }
+    }
+
+    /** Add to RESULT the paths, with PREFIX before them, of the blobs
+     *  under tree ID in STORE that are not already in it, skipping trees
+     *  in SEEN and adding the others to SEEN. */
+    private static void paths(ObjectStore store, String id, String prefix,
+                              Set<String> seen, Map<String, String> result) {
+        if (!seen.add(id)) {
+            return;
+        }
+        Tree t = store.readTree(id);
+        for (Map.Entry<String, String> e : t._files.entrySet()) {
+            result.putIfAbsent(e.getValue(), prefix + e.getKey());
+        }
+        for (Map.Entry<String, String> e : t._subtrees.entrySet()) {
+            paths(store, e.getValue(),
+                t._split ? prefix : prefix + e.getKey() + "/", seen, result);
+        }
+    }
+
+    /** Return the hexadecimal digit at DEPTH of the hash of NAME. */
+    private static String bucket(String name, int depth) {
+        int h = name.hashCode() * 0x9e3779b9;
+        h ^= h >>> 16;
+        return Integer.toHexString((h >>> (28 - 4 * depth)) & 0xf);
+    }
+
+    /** Most digits of a name's hash used to split a directory. */
+    private static final int MAX_DEPTH = 8;
+
+    /** The empty tree. */
+    private static final Tree EMPTY =
+        new Tree(false, new TreeMap<>(), new TreeMap<>());
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    /** True iff this tree holds the buckets of a split directory. */
+    private final boolean _split;
+
+    /** Blob ids by file name. */
+    private final TreeMap<String, String> _files;
+
+    /** Tree ids by subdirectory name, or by digit if split. */
+    private final TreeMap<String, String> _subtrees;
+}
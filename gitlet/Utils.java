@@ -1,16 +1,21 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -32,27 +37,83 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        long start = System.nanoTime();
+        MessageDigest md = sha1Digest();
+        update(md, vals);
+        String result = hex(md.digest());
+        Trace.hashed(start);
+        return result;
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE followed by VALS,
+     *  which may be any mixture of byte arrays and Strings.  FILE is
+     *  read a buffer at a time, so its size does not matter. */
+    static String sha1(File file, Object... vals) {
+        long start = System.nanoTime();
+        MessageDigest md = sha1Digest();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Trace.opened();
+            update(md, Trace.counted(in));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        update(md, vals);
+        String result = hex(md.digest());
+        Trace.hashed(start);
+        return result;
+    }
+
+    /** Returns the SHA-1 hash of everything left in IN, which is read a
+     *  buffer at a time. */
+    static String sha1(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest md = sha1Digest();
+        update(md, in);
+        String result = hex(md.digest());
+        Trace.hashed(start);
+        return result;
+    }
+
+    /** Adds everything left in IN to MD. */
+    private static void update(MessageDigest md, InputStream in)
+            throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            md.update(buf, 0, n);
+        }
+    }
+
+    /** Returns a fresh SHA-1 digest. */
+    private static MessageDigest sha1Digest() {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Adds VALS, a mixture of byte arrays and Strings, to MD. */
+    private static void update(MessageDigest md, Object... vals) {
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+    }
+
+    /** Returns DIGEST as a hexadecimal numeral. */
+    private static String hex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -94,7 +155,29 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.opened();
+            Trace.read(contents.length);
+            return contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the entire contents of FILE, mapped read-only rather than
+     *  read into memory.  FILE must be a normal file.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static ByteBuffer mapContents(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            Trace.opened();
+            Trace.read(contents.limit());
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -107,6 +190,28 @@ class Utils {
         return new String(readContents(file), StandardCharsets.UTF_8);
     }
 
+    /** Return true iff IN1 and IN2 hold the same bytes, reading both
+     *  a buffer at a time. */
+    static boolean sameContents(InputStream in1, InputStream in2)
+        throws IOException {
+        byte[] buf1 = new byte[BUFFER_SIZE];
+        byte[] buf2 = new byte[BUFFER_SIZE];
+        while (true) {
+            int n1 = in1.readNBytes(buf1, 0, buf1.length);
+            int n2 = in2.readNBytes(buf2, 0, buf2.length);
+            if (n1 != n2
+                || !Arrays.equals(buf1, 0, n1, buf2, 0, n2)) {
+                return false;
+            }
+            if (n1 < buf1.length) {
+                return true;
+            }
+        }
+    }
+
+    /** Size of the buffers used when streaming file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
      *  either a String or a byte array.  Throws IllegalArgumentException
@@ -119,14 +224,16 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            Trace.opened();
+            long size = 0;
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                size += bytes.length;
             }
             str.close();
+            Trace.wrote(size);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -137,10 +244,13 @@ class Utils {
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
+            InputStream stream = new FileInputStream(file);
+            Trace.opened();
             ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+                new ObjectInputStream(Trace.counted(stream));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.decoded(expectedClass);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -216,6 +326,24 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            Trace.decoded(expectedClass);
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
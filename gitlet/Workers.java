@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/** A shared pool for per-file work over the working tree, such as
+ *  hashing files for status or writing them out on checkout.  The number
+ *  of threads is taken from the gitlet.threads system property, then the
+ *  GITLET_THREADS environment variable, and defaults to the number of
+ *  processors.  With one thread, work runs on the calling thread.
+ *  Results always come back in the order of the input, so output built
+ *  from them does not depend on scheduling.
+ *  @author Jinho Shin
+ */
+class Workers {
+
+    /** Return the number of threads used. */
+    static int parallelism() {
+        return PARALLELISM;
+    }
+
+    /** Return the result of applying F to each of ITEMS, in order. */
+    static <T, R> List<R> map(Collection<T> items, Function<T, R> f) {
+        if (PARALLELISM <= 1 || items.size() <= 1) {
+            List<R> result = new ArrayList<>(items.size());
+            for (T item : items) {
+                result.add(f.apply(item));
+            }
+            return result;
+        }
+        return run(() -> items.parallelStream().map(f)
+                .collect(Collectors.toList()));
+    }
+
+    /** Return those of ITEMS that satisfy P, in order. */
+    static <T> List<T> filter(Collection<T> items, Predicate<T> p) {
+        if (PARALLELISM <= 1 || items.size() <= 1) {
+            return items.stream().filter(p).collect(Collectors.toList());
+        }
+        return run(() -> items.parallelStream().filter(p)
+                .collect(Collectors.toList()));
+    }
+
+    /** Apply ACTION to each of ITEMS, in no particular order. */
+    static <T> void forEach(Collection<T> items, Consumer<T> action) {
+        map(items, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+
+    /** Return the result of TASK run in the pool, rethrowing whatever
+     *  it threw. */
+    private static <R> R run(Callable<R> task) {
+        try {
+            return pool().submit(task).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Return the pool, creating it on first use. */
+    private static synchronized ForkJoinPool pool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(PARALLELISM);
+        }
+        return _pool;
+    }
+
+    /** Return the configured number of threads. */
+    private static int configured() {
+        String value = System.getProperty("gitlet.threads",
+                System.getenv("GITLET_THREADS"));
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException excp) {
+                /* Fall through to the default. */
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Number of threads used. */
+    private static final int PARALLELISM = configured();
+
+    /** The pool, or null until first needed. */
+    private static ForkJoinPool _pool;
+}
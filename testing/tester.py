@@ -1,9 +1,10 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, \
+     TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, remove, access, utime, W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -61,6 +62,12 @@ The instructions each have one of the following forms:
           Python regular expressions and matched accordingly. The directory
           or JAR file containing the gitlet.Main program is assumed to be
           in directory DIR specifed by --progdir (default is ..).
+   & COMMAND OPERANDS
+          Start gitlet.Main with COMMAND ARGUMENTS as its parameters and go
+          on without waiting for it, so that it runs at the same time as
+          the commands that follow.  It is expected to print nothing.
+   W      Wait for the commands started with & to finish, reporting an
+          error if any prints anything or runs out of time.
    = NAME F
           Check that the file named NAME is identical to src/F, and report an
           error if not.
@@ -70,6 +77,9 @@ The instructions each have one of the following forms:
    E NAME
           Check that file or directory NAME exists, and report an error if it
           does not.
+   M NAME SECS
+          Set the modification time of the file named NAME to SECS seconds
+          after the epoch.
    D VAR "VALUE"
           Defines the variable VAR to have the literal value VALUE.  VALUE is
           taken to be a raw Python string (as in r"VALUE").  Substitutions are
@@ -102,7 +112,7 @@ def Group(n):
 
 def contents(filename):
     try:
-        with open(filename) as inp:
+        with open(filename, errors="surrogateescape") as inp:
             return inp.read()
     except FileNotFoundError:
         return None
@@ -161,6 +171,28 @@ def doExecute(cmnd, dir, timeout):
     finally:
         chdir(here)
 
+def doStart(cmnd, dir):
+    full_cmnd = "{} {}".format(GITLET_COMMAND, cmnd)
+    return Popen(full_cmnd, shell=True, universal_newlines=True, cwd=dir,
+                 stdin=DEVNULL, stdout=PIPE, stderr=STDOUT)
+
+def doWait(procs, timeout):
+    msg = "OK"
+    for proc in procs:
+        try:
+            out = proc.communicate(timeout=timeout)[0]
+            if proc.returncode != 0:
+                msg = "java gitlet.Main exited with code {}" \
+                      .format(proc.returncode)
+            elif out and msg == "OK":
+                msg = "unexpected output: {}".format(chop_nl(out))
+        except TimeoutExpired:
+            proc.kill()
+            proc.communicate()
+            msg = "timeout"
+    procs.clear()
+    return msg
+
 def canonicalize(s):
     if s is None:
         return None
@@ -243,6 +275,7 @@ def doTest(test):
         print("Testing directory: {}".format(tmpdir))
     timeout = TIMEOUT
     defns = {}
+    started = []
 
     def do_substs(L):
         c = 0
@@ -325,6 +358,14 @@ def doTest(test):
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
                     return False
+            elif Match(r'&\s*(.*)', line):
+                started.append(doStart(Group(1), cdir))
+            elif Match(r'W\s*$', line):
+                msg = doWait(started, timeout)
+                if msg != "OK":
+                    print("ERROR ({})".format(msg))
+                    reportDetails(test, included_files, line_num)
+                    return False
             elif Match(r'=\s*(\S+)\s+(\S+)', line):
                 if not correctFileOutput(Group(1), Group(2), cdir):
                     print("ERROR (file {} has incorrect content)"
@@ -342,11 +383,20 @@ def doTest(test):
                           .format(Group(1)))
                     reportDetails(test, included_files, line_num)
                     return False
+            elif Match(r'M\s*(\S+)\s+(\d+)\s*$', line):
+                try:
+                    utime(join(cdir, Group(1)), (int(Group(2)), int(Group(2))))
+                except OSError:
+                    print("ERROR (time of file {} could not be set)"
+                          .format(Group(1)))
+                    reportDetails(test, included_files, line_num)
+                    return False
             elif Match(r'(?s)D\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*"(.*)"\s*$', line):
                 defns[Group(1)] = Group(2)
             else:
                 raise ValueError("bad mytest1 line at {}".format(line_num))
     finally:
+        doWait(started, 0)
         if not keep:
             cleanTempDir(tmpdir)
 